@@ -0,0 +1,230 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/** JMH benchmarks of the plug-in's find, whole-word find, replace-all,
+    and statistics operations over generated corpora from 1 KB to 
+    100 MB, varying the case option, whole-word mode, how densely the
+    sequence occurs, and its length.  Each operation runs as
+    <code>SearchEngine</code> and <code>TextStats</code> run it for
+    <code>Plug.find</code>, <code>findWord</code>, <code>replace</code>,
+    <code>wordCount</code>, and <code>lineCount</code>.
+
+    <p>Build the benchmarks with <code>mvn -f bench/pom.xml package</code>
+    and run them with
+    <code>java -jar bench/target/benchmarks.jar -prof gc</code>, which
+    reports each operation's throughput along with its allocation rate,
+    both per second (<code>gc.alloc.rate</code>) and per operation
+    (<code>gc.alloc.rate.norm</code>), parallel chunks included.  The
+    full set of parameters takes hours; narrow it with JMH's own 
+    options, such as
+    <code>java -jar bench/target/benchmarks.jar find -p size=1m -p length=8 -prof gc</code>.
+*/
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class OperationBenchmark {
+	/** A corpus with a sequence planted throughout, and the options to
+	 * search for it with.
+	 */
+	@State(Scope.Benchmark)
+	public static class Search {
+		/** Number of characters in the corpus. */
+		@Param({"1k", "64k", "1m", "16m", "100m"})
+		public String size;
+		/** Number of characters in the sequence. */
+		@Param({"3", "8", "32"})
+		public int length;
+		/** About one occurrence per 16K characters, or per 100. */
+		@Param({"sparse", "dense"})
+		public String density;
+		/** Whether to ignore upper/lower case. */
+		@Param({"false", "true"})
+		public boolean ignoreCase;
+		/** Whether to only find the sequence as a separate word. */
+		@Param({"false", "true"})
+		public boolean word;
+
+		String text = null;
+		String quarry = null;
+		SearchEngine engine = null;
+		SearchQuery query = null;
+
+		@Setup
+		public void setUp() {
+			quarry = sequence(length);
+			int spacing = density.equals("dense") ? 100 : 16 << 10;
+			text = plant(corpus(parseSize(size), 18), quarry, spacing, 18);
+			engine = new SearchEngine();
+			// a slightly longer replacement, so that the text grows
+			query = new SearchQuery(quarry, "<" + quarry + ">", 
+				word, ignoreCase, true, false, true, false);
+		}
+	}
+
+	/** A corpus alone, for the counts that don't depend on any query.
+	 */
+	@State(Scope.Benchmark)
+	public static class Corpus {
+		/** Number of characters in the corpus. */
+		@Param({"1k", "64k", "1m", "16m", "100m"})
+		public String size;
+
+		String text = null;
+
+		@Setup
+		public void setUp() {
+			text = corpus(parseSize(size), 18);
+		}
+	}
+
+	/** Finds every occurrence in turn, as pressing "Find" repeatedly 
+	 * would.
+	 * @param s the corpus and query
+	 * @return number of occurrences
+	 */
+	@Benchmark
+	public int find(Search s) {
+		int n = 0;
+		int loc = 0;
+		int end = s.text.length();
+		while ((loc = s.engine.indexOf(
+			s.text, s.quarry, loc, end, s.word, s.ignoreCase)) != -1) {
+			n++;
+			loc++;
+		}
+		return n;
+	}
+
+	/** Replaces every occurrence throughout the text.
+	 * @param s the corpus and query
+	 * @return number of replacements
+	 */
+	@Benchmark
+	public int replace(Search s) {
+		return s.engine.replaceAll(s.text, 0, 0, s.query, null).getCount();
+	}
+
+	/** Counts the characters, words, and lines, which 
+	 * <code>Plug.wordCount</code> and the "Statistics" button both
+	 * rely on.
+	 * @param c the corpus
+	 * @return the counts
+	 */
+	@Benchmark
+	public TextStats stats(Corpus c) {
+		return TextStats.scan(c.text, 0, c.text.length());
+	}
+
+	private static int parseSize(String size) {
+		String s = size.toLowerCase();
+		int shift = s.endsWith("k") ? 10 : s.endsWith("m") ? 20 : 0;
+		if (shift > 0) s = s.substring(0, s.length() - 1);
+		return Integer.parseInt(s) << shift;
+	}
+
+	/** Generates a corpus of pseudo-random words, each between 2 and
+	 * 10 letters drawn from "a" to "p", so that sequences drawn from the
+	 * rest of the alphabet only occur where planted.
+	 * @param size number of characters
+	 * @param seed random seed, so that runs are comparable
+	 * @return the corpus
+	 */
+	private static String corpus(int size, long seed) {
+		Random rand = new Random(seed);
+		String[] words = new String[2048];
+		for (int i = 0; i < words.length; i++) {
+			char[] word = new char[2 + rand.nextInt(9)];
+			for (int j = 0; j < word.length; j++) {
+				word[j] = (char) ('a' + rand.nextInt(16));
+			}
+			words[i] = new String(word);
+		}
+		StringBuilder sb = new StringBuilder(size + 16);
+		while (sb.length() < size) {
+			sb.append(words[rand.nextInt(words.length)]);
+			sb.append(rand.nextInt(12) == 0 ? '\n' : ' ');
+		}
+		sb.setLength(size);
+		return sb.toString();
+	}
+
+	/** Makes a sequence of letters from "q" to "z", which the corpus
+	 * itself never contains.
+	 */
+	private static String sequence(int length) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = (char) ('q' + (i * 7 + 3) % 10);
+		}
+		return new String(chars);
+	}
+
+	/** Plants occurrences of a sequence throughout a corpus, about one
+	 * per given number of characters.  Half are capitalized, so that 
+	 * ignoring case finds twice as many, and a quarter are run into the
+	 * preceding word, so that whole-word mode skips them.
+	 * @param text the corpus
+	 * @param quarry the sequence
+	 * @param spacing average characters between occurrences
+	 * @param seed random seed
+	 * @return the corpus with the occurrences
+	 */
+	private static String plant(String text, String quarry, int spacing, long seed) {
+		Random rand = new Random(seed);
+		char[] chars = text.toCharArray();
+		String upper = quarry.toUpperCase();
+		int m = quarry.length();
+		int i = rand.nextInt(spacing);
+		while (i + m + 1 < chars.length) {
+			String s = rand.nextBoolean() ? quarry : upper;
+			boolean joined = rand.nextInt(4) == 0;
+			if (!joined) chars[i] = ' ';
+			s.getChars(0, m, chars, i + 1);
+			chars[i + m + 1] = ' ';
+			i += m + 2 + rand.nextInt(2 * spacing);
+		}
+		return new String(chars);
+	}
+}
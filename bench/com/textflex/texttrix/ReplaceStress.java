@@ -0,0 +1,125 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.textflex.texttrix;
+
+import java.util.*;
+
+/** Stress test for the parallel replace-all, comparing its output with
+    the single forward pass that <code>SearchEngine</code> takes for
+    smaller regions, on randomized inputs.  Both run through the
+    engine's own replace-all, with the parallel threshold set so that 
+    every region large enough to split is split, or none is; the 
+    piece-by-piece search of background replace-alls is checked too.
+    Small alphabets and repetitive sequences make occurrences overlap
+    often, including across chunk boundaries.  Run
+    <code>java com.textflex.texttrix.ReplaceStress [rounds] [seed]</code>;
+    exits with an error describing the first mismatch, if any.  Regions
+    are only split when more than one processor is available, so on a
+    single processor add <code>-XX:ActiveProcessorCount=4</code>.
+*/
+public class ReplaceStress {
+	private static final String ALPHABET = "aAb 1\n";
+
+	/** Runs the stress test.
+	 * @param args optionally, the number of rounds and the random seed
+	 */
+	public static void main(String[] args) {
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+		Random rand = new Random(seed);
+		System.out.println("seed: " + seed);
+		SearchEngine engine = new SearchEngine();
+		int threshold = ParallelReplace.getParallelThreshold();
+		for (int i = 0; i < rounds; i++) {
+			int n = 1 + rand.nextInt(1 << 20);
+			String text = randomText(rand, n, 1 + rand.nextInt(ALPHABET.length()));
+			String quarry = randomText(rand, 1 + rand.nextInt(4), 3);
+			if (rand.nextInt(8) == 0) {
+				// long enough for Boyer-Moore-Horspool
+				quarry = randomText(rand, SearchPattern.LONG_PATTERN, 1);
+			}
+			String replacement = randomText(rand, rand.nextInt(6), 2);
+			boolean word = rand.nextBoolean();
+			boolean ignoreCase = rand.nextBoolean();
+			int start = rand.nextInt(n);
+			int end = start + rand.nextInt(n - start + 1);
+			
+			// replace-all within the selected region
+			CompiledQuery compiled = engine.compile(new SearchQuery(
+				quarry, replacement, word, ignoreCase, false, true, true, false));
+			ParallelReplace.setParallelThreshold(Integer.MAX_VALUE);
+			SearchResult sequential = 
+				engine.replaceAll(text, start, end, compiled, null);
+			ParallelReplace.setParallelThreshold(0);
+			SearchResult parallel = 
+				engine.replaceAll(text, start, end, compiled, null);
+			SearchResult tracked = 
+				engine.replaceAll(text, start, end, compiled, new Progress());
+			String round = "round " + i + ": \"" + quarry 
+				+ "\" in " + n + " chars [" + start + ", " + end + ")"
+				+ ", word " + word + ", ignore case " + ignoreCase + ": ";
+			check(round + "parallel", parallel, sequential);
+			check(round + "with progress", tracked, sequential);
+		}
+		ParallelReplace.setParallelThreshold(threshold);
+		System.out.println(rounds + " rounds passed");
+	}
+
+	/** Checks that a replace-all made the same replacements as the
+	 * single forward pass.
+	 * @throws IllegalStateException if not
+	 */
+	private static void check(
+		String description, 
+		SearchResult result, 
+		SearchResult sequential) {
+		if (result.getCount() != sequential.getCount()
+			|| !result.getText().equals(sequential.getText())) {
+			throw new IllegalStateException(description + " made " 
+				+ result.getCount() + " replacements vs " 
+				+ sequential.getCount() + " sequential");
+		}
+	}
+
+	private static String randomText(Random rand, int n, int letters) {
+		char[] chars = new char[n];
+		for (int i = 0; i < n; i++) {
+			chars[i] = ALPHABET.charAt(rand.nextInt(letters));
+		}
+		return new String(chars);
+	}
+}
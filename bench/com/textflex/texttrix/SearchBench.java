@@ -0,0 +1,234 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.textflex.texttrix;
+
+import java.util.*;
+
+/** Benchmarks the compiled search sequences against the plain
+    <code>String.indexOf</code> scan that <code>Plug.findSeq</code>
+    used to rely on, and against lowercasing the whole text for each
+    case-insensitive search as <code>Plug.find</code> used to do.
+    Also times each keystroke of a query typed into the "Find" box,
+    searching the whole text each time versus narrowing the previous
+    keystroke's occurrences.
+    Kept out of the plug-in's own source tree so that it never ships
+    with the plug-in.  Compile it together with the plug-in's sources
+    and run <code>java com.textflex.texttrix.SearchBench [size]</code>,
+    where <code>size</code> is the corpus length in characters.
+*/
+public class SearchBench {
+	private static final int WARMUP = 5;
+	private static final int RUNS = 10;
+	// words to build a log-like corpus from
+	private static final String[] WORDS = {
+		"INFO", "WARN", "request", "served", "in", "ms", "user", "session",
+		"opened", "closed", "for", "connection", "from", "host", "the",
+		"cache", "miss", "hit", "ok", "timeout", "retrying", "queue"
+	};
+
+	/** Runs the benchmarks.
+	 * @param args optionally, the corpus length in characters
+	 */
+	public static void main(String[] args) {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 16 << 20;
+		String text = corpus(size, 42);
+		String[] quarries = {
+			"ms", // short
+			"timeout", // medium
+			"connection closed for host 10.0.0.1", // medium, absent
+			repeat("session opened for user ", 12) // long, absent
+		};
+		System.out.println("corpus: " + text.length() + " chars");
+		for (int i = 0; i < quarries.length; i++) {
+			String quarry = quarries[i];
+			SearchPattern pattern = new SearchPattern(quarry);
+			// check both paths agree before timing them
+			int expected = countIndexOf(text, quarry);
+			int actual = countPattern(text, pattern);
+			if (expected != actual) {
+				throw new IllegalStateException("mismatch for \"" + quarry
+					+ "\": " + expected + " vs " + actual);
+			}
+			long indexOfTime = time(text, quarry, null);
+			long patternTime = time(text, quarry, pattern);
+			System.out.println("length " + quarry.length() + ", "
+				+ expected + " matches: "
+				+ "indexOf " + mbPerSec(text, indexOfTime) + " MB/s, "
+				+ "SearchPattern " + mbPerSec(text, patternTime) + " MB/s");
+		}
+		
+		// a single case-insensitive "Find" from the middle of the text
+		int mid = text.length() / 2;
+		for (int i = 0; i < quarries.length; i++) {
+			String quarry = quarries[i].toUpperCase();
+			SearchPattern pattern = new SearchPattern(quarry, true);
+			long lowerTime = Long.MAX_VALUE;
+			long foldTime = Long.MAX_VALUE;
+			for (int j = 0; j < WARMUP + RUNS; j++) {
+				long t = System.nanoTime();
+				int expected = text.toLowerCase().indexOf(quarry.toLowerCase(), mid);
+				long t2 = System.nanoTime();
+				int actual = pattern.indexOf(text, mid, text.length());
+				long t3 = System.nanoTime();
+				if (expected != actual) {
+					throw new IllegalStateException("ignore-case mismatch for \""
+						+ quarry + "\": " + expected + " vs " + actual);
+				}
+				if (j >= WARMUP) {
+					lowerTime = Math.min(lowerTime, t2 - t);
+					foldTime = Math.min(foldTime, t3 - t2);
+				}
+			}
+			System.out.println("ignore case, length " + quarry.length() + ": "
+				+ "toLowerCase " + lowerTime / 1000 + " us, "
+				+ "SearchPattern " + foldTime / 1000 + " us");
+		}
+		
+		typing(text, "connection closed");
+		typing(text, "Timeout");
+	}
+
+	/** Times a query typed one character at a time, then backspaced 
+	 * one character at a time, as search-as-you-type would see it.
+	 * Prints the slowest keystroke both ways.
+	 * @param text text to search
+	 * @param query the query to type
+	 */
+	private static void typing(String text, String query) {
+		long fullTime = 0;
+		long incrementalTime = 0;
+		for (int run = 0; run < WARMUP + RUNS; run++) {
+			IncrementalSearch incremental = new IncrementalSearch();
+			long full = 0;
+			long narrowed = 0;
+			// type the query, then backspace it
+			for (int k = 1; k < 2 * query.length(); k++) {
+				String quarry = query.substring(0, 
+					k <= query.length() ? k : 2 * query.length() - k);
+				long t = System.nanoTime();
+				IntList expected = new IntList();
+				new SearchPattern(quarry, true).findAll(
+					text, 0, text.length(), false, expected);
+				long t2 = System.nanoTime();
+				IntList actual = incremental.find(text, quarry, false, true);
+				long t3 = System.nanoTime();
+				if (expected.size() != actual.size()) {
+					throw new IllegalStateException("typing mismatch for \""
+						+ quarry + "\": " + expected.size() + " vs " + actual.size());
+				}
+				// the first keystroke has nothing to narrow
+				if (k > 1) {
+					full = Math.max(full, t2 - t);
+					narrowed = Math.max(narrowed, t3 - t2);
+				}
+			}
+			if (run >= WARMUP) {
+				fullTime += full;
+				incrementalTime += narrowed;
+			}
+		}
+		System.out.println("typing \"" + query + "\", slowest keystroke after "
+			+ "the first: full search " + fullTime / RUNS / 1000 + " us, "
+			+ "IncrementalSearch " + incrementalTime / RUNS / 1000 + " us");
+	}
+
+	/** Generates a pseudo-random, log-like corpus.
+	 * @param size number of characters
+	 * @param seed random seed, so that runs are comparable
+	 * @return the corpus
+	 */
+	static String corpus(int size, long seed) {
+		Random rand = new Random(seed);
+		StringBuilder sb = new StringBuilder(size + 64);
+		while (sb.length() < size) {
+			sb.append(WORDS[rand.nextInt(WORDS.length)]);
+			sb.append(rand.nextInt(12) == 0 ? '\n' : ' ');
+		}
+		sb.setLength(size);
+		return sb.toString();
+	}
+
+	private static String repeat(String s, int n) {
+		StringBuilder sb = new StringBuilder(s.length() * n);
+		for (int i = 0; i < n; i++) sb.append(s);
+		return sb.toString();
+	}
+
+	/** Gets the best time of several runs, after warming up.
+	 * @param pattern the compiled sequence, or <code>null</code> to time
+	 * <code>String.indexOf</code>
+	 * @return nanoseconds for the fastest run
+	 */
+	private static long time(String text, String quarry, SearchPattern pattern) {
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < WARMUP + RUNS; i++) {
+			long t = System.nanoTime();
+			int n = pattern == null
+				? countIndexOf(text, quarry)
+				: countPattern(text, pattern);
+			t = System.nanoTime() - t;
+			if (n < 0) System.out.println(); // keep the result alive
+			if (i >= WARMUP && t < best) best = t;
+		}
+		return best;
+	}
+
+	private static int countIndexOf(String text, String quarry) {
+		int n = 0;
+		int loc = 0;
+		while ((loc = text.indexOf(quarry, loc)) != -1) {
+			n++;
+			loc++;
+		}
+		return n;
+	}
+
+	private static int countPattern(String text, SearchPattern pattern) {
+		int n = 0;
+		int loc = 0;
+		int end = text.length();
+		while ((loc = pattern.indexOf(text, loc, end)) != -1) {
+			n++;
+			loc++;
+		}
+		return n;
+	}
+
+	private static long mbPerSec(String text, long nanos) {
+		return Math.round(text.length() / 1e6 / (nanos / 1e9));
+	}
+}
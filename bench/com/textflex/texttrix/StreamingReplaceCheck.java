@@ -0,0 +1,98 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.textflex.texttrix;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+
+/** Checks that replacing within a file leaves the file as the user set
+    it up: replacing through a symbolic link rewrites the file it points
+    to while the link stays a link, and the file keeps its permissions.
+    Run <code>java com.textflex.texttrix.StreamingReplaceCheck</code>;
+    exits with an error describing the first failure, if any.
+*/
+public class StreamingReplaceCheck {
+	/** Runs the checks.
+	 * @param args not used
+	 * @throws IOException if the check can't create its files
+	 */
+	public static void main(String[] args) throws IOException {
+		checkFileAttributes();
+		System.out.println("file attributes kept");
+	}
+
+	/** Checks that a streaming replace-all keeps a file's permissions
+	 * and a symbolic link to it.
+	 */
+	private static void checkFileAttributes() throws IOException {
+		Path dir = Files.createTempDirectory("streamingreplace");
+		Path file = dir.resolve("script.sh");
+		Path link = dir.resolve("link.sh");
+		try {
+			Files.write(file, "echo aAb\n".getBytes(StandardCharsets.UTF_8));
+			Set<PosixFilePermission> mode = 
+				PosixFilePermissions.fromString("rwxr-xr-x");
+			boolean posix = 
+				Files.getFileAttributeView(file, PosixFileAttributeView.class) != null;
+			if (posix) Files.setPosixFilePermissions(file, mode);
+			Files.createSymbolicLink(link, file.getFileName());
+			long count = new StreamingReplace("aAb", "b", false, false)
+				.replace(link, null);
+			String text = 
+				new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+			if (count != 1 || !text.equals("echo b\n")) {
+				throw new IllegalStateException("file not replaced: " + count 
+					+ " replacements, \"" + text + "\"");
+			}
+			if (!Files.isSymbolicLink(link)) {
+				throw new IllegalStateException("link replaced by a file");
+			}
+			if (posix && !Files.getPosixFilePermissions(file).equals(mode)) {
+				throw new IllegalStateException("permissions changed to " 
+					+ PosixFilePermissions.toString(
+						Files.getPosixFilePermissions(file)));
+			}
+		} finally {
+			Files.deleteIfExists(link);
+			Files.deleteIfExists(file);
+			Files.delete(dir);
+		}
+	}
+}
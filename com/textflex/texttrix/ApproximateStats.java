@@ -0,0 +1,345 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+import java.util.concurrent.*;
+
+/** Approximate word statistics for text too large to tally every 
+    distinct word exactly, as {@link WordFrequency} does.
+    The number of distinct words comes from a {@link HyperLogLog}, and
+    the most frequent words from a {@link CountMinSketch} along with 
+    its {@link HeavyHitters}, all of which take a fixed amount of 
+    memory, about 530 KB, however large the text.  The total number of
+    words is still exact.
+
+    <p>Sections of at least {@link TextStats#getParallelThreshold()} 
+    characters are split into chunks, one for each thread of the common
+    fork/join pool, each counted into statistics of its own.  The 
+    chunks' statistics then merge into those of the whole section.  
+    Chunks only split between words, so that no word is counted twice.
+*/
+public class ApproximateStats {
+	/** Default for the smallest section to estimate rather than tally
+	 * exactly. */
+	public static final int DEFAULT_THRESHOLD = 1 << 26;
+	// smallest chunk worth handing to another thread
+	private static final int MIN_CHUNK = 1 << 20;
+	// smallest piece to count between progress reports
+	private static final int PROGRESS_PIECE = 1 << 22;
+	// 64-bit FNV-1a constants, for hashing each word as it is read
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+	private static volatile int threshold = DEFAULT_THRESHOLD;
+
+	private boolean ignoreCase = false;
+	private long words = 0; // number of words, including repeats
+	private HyperLogLog distinct = new HyperLogLog();
+	private CountMinSketch counts = new CountMinSketch();
+	private HeavyHitters top = new HeavyHitters();
+
+	/** Creates empty statistics, for merging others into.
+	 * @param ignoreCase if true, count words differing only in upper and
+	 * lower case as the same word
+	 */
+	public ApproximateStats(boolean ignoreCase) {
+		this.ignoreCase = ignoreCase;
+	}
+
+	/** Sets the smallest section to estimate rather than tally exactly.
+	 * @param length number of characters at or above which to estimate;
+	 * <code>Integer.MAX_VALUE</code> always tallies exactly
+	 */
+	public static void setThreshold(int length) {
+		threshold = Math.max(length, 0);
+	}
+
+	/** Gets the smallest section to estimate rather than tally exactly.
+	 * @return number of characters at or above which to estimate
+	 */
+	public static int getThreshold() {
+		return threshold;
+	}
+
+	/** Checks whether a section is large enough to estimate its word
+	 * statistics rather than tally them exactly.
+	 * @param length number of characters in the section
+	 * @return true if the section is to be estimated
+	 */
+	public static boolean isApproximate(int length) {
+		return length >= threshold;
+	}
+
+	/** Estimates the word statistics for a section of text.
+	 * As with {@link TextStats#scan(CharSequence, int, int)}, a word 
+	 * cut off by either end of the section still counts.
+	 * @param s text to count; must not change during the scan
+	 * @param start first character to count
+	 * @param end first character to no longer count
+	 * @param ignoreCase if true, count words differing only in upper and
+	 * lower case as the same word
+	 * @return the statistics for the section
+	 */
+	public static ApproximateStats scan(
+		CharSequence s, 
+		int start, 
+		int end, 
+		boolean ignoreCase) {
+		if (end - start >= TextStats.getParallelThreshold() 
+			&& Runtime.getRuntime().availableProcessors() > 1) {
+			// a chunk for each thread, so that only a few sets of 
+			// statistics take memory at once
+			int chunk = Math.max(MIN_CHUNK, 
+				(end - start) / ForkJoinPool.getCommonPoolParallelism() + 1);
+			return ForkJoinPool.commonPool().invoke(
+				new ScanTask(s, start, end, chunk, ignoreCase));
+		}
+		return scanSequential(s, start, end, ignoreCase);
+	}
+
+	/** Estimates the word statistics for a section of text piece by 
+	 * piece, reporting progress and stopping if canceled after each 
+	 * piece.
+	 * @param s text to count; must not change during the scan
+	 * @param start first character to count
+	 * @param end first character to no longer count
+	 * @param ignoreCase if true, count words differing only in upper and
+	 * lower case as the same word
+	 * @param progress progress to report to
+	 * @return the statistics for the section
+	 * @throws java.util.concurrent.CancellationException if canceled
+	 */
+	public static ApproximateStats scan(
+		CharSequence s, 
+		int start, 
+		int end, 
+		boolean ignoreCase,
+		Progress progress) {
+		progress.begin(end - start);
+		// pieces big enough to still count in parallel
+		int piece = Math.max(PROGRESS_PIECE, TextStats.getParallelThreshold());
+		ApproximateStats stats = new ApproximateStats(ignoreCase);
+		int i = start;
+		while (i < end) {
+			int next = wordBoundary(s, (int) Math.min((long) i + piece, end), end);
+			stats.merge(scan(s, i, next, ignoreCase));
+			i = next;
+			progress.setDone(i - start);
+			progress.checkCanceled();
+		}
+		return stats;
+	}
+
+	/** Estimates the word statistics for a section of text on the 
+	 * calling thread.
+	 */
+	private static ApproximateStats scanSequential(
+		CharSequence s, 
+		int start, 
+		int end, 
+		boolean ignoreCase) {
+		ApproximateStats stats = new ApproximateStats(ignoreCase);
+		int i = start;
+		while (i < end) {
+			char c = s.charAt(i);
+			if (!SearchPattern.isWordChar(c)) {
+				i++;
+				continue;
+			}
+			int wordStart = i;
+			long h = FNV_OFFSET;
+			do {
+				h = (h ^ (ignoreCase ? SearchPattern.fold(c) : c)) * FNV_PRIME;
+				if (++i == end) break;
+				c = s.charAt(i);
+			} while (SearchPattern.isWordChar(c));
+			h = mix(h);
+			stats.words++;
+			stats.distinct.add(h);
+			stats.top.offer(
+				h, stats.counts.add(h), s, wordStart, i, ignoreCase);
+		}
+		return stats;
+	}
+
+	/** Spreads a hash's bits, so that each of its bits depends on every
+	 * character of the word, as MurmurHash3 finishes its hashes.
+	 */
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/** Finds the first place at or after a position that doesn't split
+	 * a word.
+	 * @return the position, or the end of the section
+	 */
+	private static int wordBoundary(CharSequence s, int pos, int end) {
+		while (pos < end && pos > 0 && SearchPattern.isWordChar(s.charAt(pos))
+			&& SearchPattern.isWordChar(s.charAt(pos - 1))) {
+			pos++;
+		}
+		return pos;
+	}
+
+	/** Adds the statistics for another section to these statistics.
+	 * @param other statistics gathered with the same case setting
+	 */
+	public void merge(ApproximateStats other) {
+		words += other.words;
+		distinct.merge(other.distinct);
+		counts.merge(other.counts);
+		top.merge(other.top, counts);
+	}
+
+	/** Counts a section by splitting it in half between words until the
+	 * pieces are small enough to count directly, then merging the 
+	 * pieces' statistics.
+	 */
+	private static class ScanTask extends RecursiveTask<ApproximateStats> {
+		private static final long serialVersionUID = 1L;
+
+		private CharSequence s = null;
+		private int start = 0;
+		private int end = 0;
+		private int chunk = 0;
+		private boolean ignoreCase = false;
+
+		ScanTask(
+			CharSequence s, 
+			int start, 
+			int end, 
+			int chunk, 
+			boolean ignoreCase) {
+			this.s = s;
+			this.start = start;
+			this.end = end;
+			this.chunk = chunk;
+			this.ignoreCase = ignoreCase;
+		}
+
+		protected ApproximateStats compute() {
+			int mid = end - start <= chunk 
+				? end 
+				: wordBoundary(s, start + (end - start) / 2, end);
+			if (mid == end) {
+				return scanSequential(s, start, end, ignoreCase);
+			}
+			ScanTask left = new ScanTask(s, start, mid, chunk, ignoreCase);
+			ScanTask right = new ScanTask(s, mid, end, chunk, ignoreCase);
+			left.fork();
+			ApproximateStats rightStats = right.compute();
+			ApproximateStats stats = left.join();
+			stats.merge(rightStats);
+			return stats;
+		}
+	}
+
+	/** Gets the number of words, counting each repeat.
+	 * @return number of words, exactly
+	 */
+	public long getWords() {
+		return words;
+	}
+
+	/** Estimates the number of distinct words.
+	 * @return the estimate
+	 */
+	public long getDistinctWords() {
+		return distinct.estimate();
+	}
+
+	/** Gets the standard error of the distinct word estimate.
+	 * @return the error relative to the estimate, such as 0.008 for 0.8%
+	 */
+	public double getDistinctError() {
+		return distinct.getRelativeError();
+	}
+
+	/** Gets how far a word's estimated count may be too high.
+	 * Estimated counts are never too low.
+	 * @return the most by which a count may exceed the actual count,
+	 * except with a probability of {@link #getCountErrorProbability()}
+	 */
+	public long getCountError() {
+		return counts.getErrorBound();
+	}
+
+	/** Gets the chance that an estimated count exceeds its bound.
+	 * @return the probability, from 0 to 1
+	 */
+	public double getCountErrorProbability() {
+		return counts.getErrorProbability();
+	}
+
+	/** Gets the words estimated to occur most often.
+	 * @param n the most words to get, up to 
+	 * {@link HeavyHitters#DEFAULT_CAPACITY}
+	 * @return the words, identified as for {@link #getWord(int)}, most 
+	 * frequent first
+	 */
+	public int[] getTop(int n) {
+		return top.getTop(n);
+	}
+
+	/** Gets a word as a string.
+	 * @param word the word, as identified by {@link #getTop(int)}
+	 * @return the word as it occurs, or in lower case if ignoring case
+	 */
+	public String getWord(int word) {
+		return top.getWord(word);
+	}
+
+	/** Gets a word's estimated count.
+	 * @param word the word, as identified by {@link #getTop(int)}
+	 * @return the estimated number of occurrences
+	 */
+	public int getCount(int word) {
+		return top.getCount(word);
+	}
+
+	/** Gets the memory that the estimates take.
+	 * @return number of bytes
+	 */
+	public int getMemoryBytes() {
+		return distinct.getMemoryBytes() + counts.getMemoryBytes();
+	}
+}
@@ -0,0 +1,122 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+import java.util.regex.*;
+
+/** A {@link SearchQuery} with its quarry compiled, ready to search
+    with as often as needed.
+    Compiling folds the quarry's case, builds its skip tables, and for
+    regular expressions, compiles the expression, all once, rather than
+    once per search.  The dialog keeps its compiled query until one of
+    its fields or check boxes changes, so that pressing "Find" again
+    and again compiles nothing.
+    A compiled query never changes, and can be shared among threads.
+*/
+public class CompiledQuery {
+	private final SearchQuery query;
+	// the quarry as a sequence; null if only searched as an expression
+	private final SearchPattern pattern;
+	private final boolean regexFind;
+	private final boolean regexReplace;
+	// the quarry as an expression, if needed, or what was wrong with it
+	private final Pattern regex;
+	private final PatternSyntaxException error;
+
+	/** Compiles a query.
+	 * An invalid regular expression doesn't stop the compiling; the
+	 * error comes up once the expression is used.
+	 * @param query the query
+	 */
+	public CompiledQuery(SearchQuery query) {
+		this.query = query;
+		regexFind = SearchEngine.isRegex(query, false);
+		// the replacement alone can call for an expression, when it 
+		// refers to groups
+		regexReplace = SearchEngine.isRegex(query, true);
+		pattern = regexFind 
+			? null 
+			: new SearchPattern(query.getQuarry(), query.getIgnoreCase());
+		Pattern compiled = null;
+		PatternSyntaxException invalid = null;
+		if (regexReplace) {
+			try {
+				compiled = RegexSearch.compile(
+					query.getQuarry(), query.getWord(), query.getIgnoreCase());
+			} catch (PatternSyntaxException e) {
+				invalid = e;
+			}
+		}
+		regex = compiled;
+		error = invalid;
+	}
+
+	/** Gets the query compiled.
+	 * @return the query
+	 */
+	public SearchQuery getQuery() {
+		return query;
+	}
+
+	/** Checks whether searching needs the regular expression engine.
+	 * @param replace true if replacing rather than only finding
+	 * @return true if the quarry must be searched as an expression
+	 * @see SearchEngine#isRegex(SearchQuery, boolean)
+	 */
+	public boolean isRegex(boolean replace) {
+		return replace ? regexReplace : regexFind;
+	}
+
+	/** Gets the quarry compiled as a sequence, folded if ignoring case.
+	 * @return the compiled sequence; <code>null</code> if the quarry is
+	 * only searched as a regular expression
+	 */
+	public SearchPattern getPattern() {
+		return pattern;
+	}
+
+	/** Gets the quarry compiled as a regular expression.
+	 * @return the expression; <code>null</code> if the quarry is never
+	 * searched as one
+	 * @throws PatternSyntaxException if the expression is invalid
+	 */
+	public Pattern getRegex() {
+		if (error != null) throw error;
+		return regex;
+	}
+}
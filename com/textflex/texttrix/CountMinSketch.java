@@ -0,0 +1,172 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+/** Approximate counts of how often each item, such as a word, occurs
+    in a stream too large to keep an exact tally of every item.
+    The sketch is a grid of counters, a row for each of several hash 
+    functions.  Counting an item adds one to the counter it hashes to
+    in each row, and the item's estimate is the least of those 
+    counters, since other items can only have added to each of them.
+    An estimate is therefore never too low, and with a width of 
+    <code>w</code> counters is too high by at most 
+    <code>e / w</code> times the number of items counted, except with 
+    a probability of <code>e^-depth</code>.
+    The memory taken stays fixed no matter how many items.  Sketches
+    of the same size, gathered separately, merge by adding their 
+    counters.
+*/
+public class CountMinSketch {
+	/** Default number of counters in each row. */
+	public static final int DEFAULT_WIDTH = 1 << 15;
+	/** Default number of rows, for a 98% chance that an estimate is 
+	 * within its bound. */
+	public static final int DEFAULT_DEPTH = 4;
+
+	private int width = DEFAULT_WIDTH; // a power of 2
+	private int depth = DEFAULT_DEPTH;
+	private int[] counters = null; // each row in turn
+	private long total = 0; // number of items counted
+
+	/** Creates an empty sketch with the default size, taking 512 KB.
+	 */
+	public CountMinSketch() {
+		this(DEFAULT_WIDTH, DEFAULT_DEPTH);
+	}
+
+	/** Creates an empty sketch.
+	 * @param width number of counters in each row, rounded up to a 
+	 * power of 2
+	 * @param depth number of rows
+	 * @throws IllegalArgumentException if the width or depth is less
+	 * than 1, or too large
+	 */
+	public CountMinSketch(int width, int depth) {
+		if (width < 1 || width > 1 << 28 || depth < 1) {
+			throw new IllegalArgumentException("Bad sketch size: " 
+				+ width + " x " + depth);
+		}
+		int rounded = Integer.highestOneBit(width);
+		if (rounded < width) rounded <<= 1;
+		if ((long) rounded * depth > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Bad sketch size: " 
+				+ width + " x " + depth);
+		}
+		this.width = rounded;
+		this.depth = depth;
+		counters = new int[rounded * depth];
+	}
+
+	/** Counts an item.
+	 * @param hash the item's hash, with all 64 bits well mixed
+	 * @return the item's estimated count, including this occurrence
+	 */
+	public int add(long hash) {
+		total++;
+		int min = Integer.MAX_VALUE;
+		int mask = width - 1;
+		// each row's hash combines the two halves of the item's hash
+		int a = (int) hash;
+		int b = (int) (hash >>> 32) | 1;
+		for (int row = 0, offset = 0; row < depth; row++, offset += width) {
+			int i = offset + ((a + row * b) & mask);
+			int count = ++counters[i];
+			if (count < min) min = count;
+		}
+		return min;
+	}
+
+	/** Estimates how often an item occurs.
+	 * @param hash the item's hash
+	 * @return the estimated count, never less than the actual count
+	 */
+	public int estimate(long hash) {
+		int min = Integer.MAX_VALUE;
+		int mask = width - 1;
+		int a = (int) hash;
+		int b = (int) (hash >>> 32) | 1;
+		for (int row = 0, offset = 0; row < depth; row++, offset += width) {
+			int count = counters[offset + ((a + row * b) & mask)];
+			if (count < min) min = count;
+		}
+		return min;
+	}
+
+	/** Adds the items counted by another sketch to this one.
+	 * @param other sketch of the same size
+	 * @throws IllegalArgumentException if the sizes differ
+	 */
+	public void merge(CountMinSketch other) {
+		if (other.width != width || other.depth != depth) {
+			throw new IllegalArgumentException("Sketch sizes differ");
+		}
+		for (int i = 0; i < counters.length; i++) {
+			counters[i] += other.counters[i];
+		}
+		total += other.total;
+	}
+
+	/** Gets the number of items counted, including repeats.
+	 * @return the number of items
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/** Gets how far an estimate may be too high.
+	 * @return the most by which an estimate exceeds the actual count, 
+	 * except with a probability of {@link #getErrorProbability()}
+	 */
+	public long getErrorBound() {
+		return (long) Math.ceil(Math.E / width * total);
+	}
+
+	/** Gets the chance that an estimate exceeds its bound.
+	 * @return the probability, from 0 to 1
+	 */
+	public double getErrorProbability() {
+		return Math.exp(-depth);
+	}
+
+	/** Gets the memory that the counters take.
+	 * @return number of bytes
+	 */
+	public int getMemoryBytes() {
+		return counters.length * 4;
+	}
+}
@@ -0,0 +1,214 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+import javax.swing.event.*;
+import javax.swing.text.*;
+import javax.swing.undo.*;
+
+/** A list of edits to a text, each removing a run of characters at an
+    offset and inserting new text in its place.
+    Replacing every occurrence of a sequence in a large document only 
+    touches a few spots, so rather than building a whole new copy of the
+    document, the edits alone can be applied to it in place.  The edits
+    are kept in primitive arrays, and the inserted text in a single 
+    buffer that holds a repeated replacement only once, so that the list
+    takes memory in proportion to the edits rather than to the text.
+    Offsets refer to the original text, and edits are added in order,
+    without overlapping.
+*/
+public class EditList {
+	private IntList offsets = new IntList(); // where each edit starts
+	private IntList removed = new IntList(); // characters each edit removes
+	// span of the inserted text within the buffer, for each edit
+	private IntList insertStarts = new IntList();
+	private IntList insertEnds = new IntList();
+	private StringBuilder inserted = new StringBuilder();
+	private String lastInserted = null; // last string added to the buffer
+	private long delta = 0; // change in the text's length
+
+	/** Adds an edit after the edits already added.
+	 * @param offset offset in the original text at which to edit
+	 * @param removedLength number of characters to remove
+	 * @param text text to insert in place of the removed characters
+	 * @throws IllegalArgumentException if the edit starts before the 
+	 * end of the previous one
+	 */
+	public void add(int offset, int removedLength, CharSequence text) {
+		int n = offsets.size();
+		if (n > 0 && offset < offsets.get(n - 1) + removed.get(n - 1)) {
+			throw new IllegalArgumentException(
+				"Edit at " + offset + " overlaps the previous edit");
+		}
+		offsets.add(offset);
+		removed.add(removedLength);
+		// the same replacement string over and over, as when replacing
+		// every occurrence of a sequence, is stored only once
+		if (!(text instanceof String) || text != lastInserted) {
+			insertStarts.add(inserted.length());
+			inserted.append(text);
+			insertEnds.add(inserted.length());
+			lastInserted = text instanceof String ? (String) text : null;
+		} else {
+			insertStarts.add(insertStarts.get(n - 1));
+			insertEnds.add(insertEnds.get(n - 1));
+		}
+		delta += text.length() - removedLength;
+	}
+
+	/** Gets the number of edits.
+	 * @return the number of edits
+	 */
+	public int size() {
+		return offsets.size();
+	}
+
+	/** Gets where an edit starts.
+	 * @param i index of the edit
+	 * @return the edit's offset in the original text
+	 */
+	public int getOffset(int i) {
+		return offsets.get(i);
+	}
+
+	/** Gets the number of characters an edit removes.
+	 * @param i index of the edit
+	 * @return the number of characters removed
+	 */
+	public int getRemovedLength(int i) {
+		return removed.get(i);
+	}
+
+	/** Gets the text an edit inserts.
+	 * @param i index of the edit
+	 * @return the inserted text
+	 */
+	public String getInserted(int i) {
+		return inserted.substring(insertStarts.get(i), insertEnds.get(i));
+	}
+
+	/** Gets how much the edits change the text's length.
+	 * @return the number of characters added, or if negative, removed
+	 */
+	public long getDelta() {
+		return delta;
+	}
+
+	/** Builds a region of the text as it reads after the edits.
+	 * @param text the original text
+	 * @param start start of the region, at or before the first edit
+	 * @param end end of the region, at or after the end of the last edit
+	 * @return the region with the edits made
+	 */
+	public String apply(CharSequence text, int start, int end) {
+		long length = end - start + delta;
+		if (length > Integer.MAX_VALUE - 16) {
+			throw new OutOfMemoryError("Edited text too long: " + length);
+		}
+		StringBuilder s = new StringBuilder((int) length);
+		int prev = start;
+		int n = offsets.size();
+		for (int i = 0; i < n; i++) {
+			int offset = offsets.get(i);
+			s.append(text, prev, offset)
+				.append(inserted, insertStarts.get(i), insertEnds.get(i));
+			prev = offset + removed.get(i);
+		}
+		s.append(text, prev, end);
+		return s.toString();
+	}
+
+	/** Makes the edits in place in a document that still holds the 
+	 * original text.
+	 * The edits are made from last to first, so that each edit's 
+	 * offset still refers to the original text when it is made.
+	 * The document's undoable edit listeners hear of the edits only 
+	 * once they are all made, as a single edit that undoes them all 
+	 * in one step.  If an edit fails, those already made are taken 
+	 * back, leaving the document as it was, and the listeners hear of
+	 * nothing.
+	 * @param doc the document
+	 * @throws BadLocationException if an edit falls outside the document
+	 */
+	public void applyTo(Document doc) throws BadLocationException {
+		// only an AbstractDocument tells which listeners to hold back
+		UndoableEditListener[] listeners = doc instanceof AbstractDocument
+			? ((AbstractDocument) doc).getUndoableEditListeners()
+			: new UndoableEditListener[0];
+		final CompoundEdit compound = new CompoundEdit();
+		UndoableEditListener gatherer = new UndoableEditListener() {
+			public void undoableEditHappened(UndoableEditEvent e) {
+				compound.addEdit(e.getEdit());
+			}
+		};
+		for (int i = 0; i < listeners.length; i++) {
+			doc.removeUndoableEditListener(listeners[i]);
+		}
+		doc.addUndoableEditListener(gatherer);
+		boolean applied = false;
+		try {
+			for (int i = offsets.size() - 1; i >= 0; i--) {
+				int offset = offsets.get(i);
+				int length = removed.get(i);
+				String text = getInserted(i);
+				if (doc instanceof AbstractDocument) {
+					((AbstractDocument) doc).replace(offset, length, text, null);
+				} else {
+					if (length > 0) doc.remove(offset, length);
+					if (text.length() > 0) doc.insertString(offset, text, null);
+				}
+			}
+			applied = true;
+		} finally {
+			doc.removeUndoableEditListener(gatherer);
+			for (int i = 0; i < listeners.length; i++) {
+				doc.addUndoableEditListener(listeners[i]);
+			}
+			compound.end();
+			if (!applied) {
+				// take back the edits made before the one that failed
+				if (compound.canUndo()) compound.undo();
+			} else if (compound.isSignificant()) {
+				UndoableEditEvent event = new UndoableEditEvent(doc, compound);
+				for (int i = 0; i < listeners.length; i++) {
+					listeners[i].undoableEditHappened(event);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,419 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.textflex.texttrix;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/** Finds a sequence in every file under a directory.
+    The directory tree is walked on the calling thread, while a fixed
+    pool of threads searches the files it turns up, several at once.
+    Each file is memory-mapped through its <code>FileChannel</code>
+    rather than read into the heap.  When the sequence is plain ASCII
+    and the files' encoding keeps ASCII characters as single bytes, as
+    UTF-8 does, the mapped bytes are first scanned for the sequence
+    directly, so that the many files without it are never decoded at
+    all.  Only files that may hold the sequence are decoded and
+    searched with the same rules as <code>Plug.find</code>, including
+    "Whole word only" and "Ignore case".  They are decoded through a
+    fixed-size buffer, as <code>StreamingReplace</code> reads files,
+    carrying the last few characters of each load over to the next so
+    that occurrences straddling two loads are still found, and so each
+    searching thread takes the same small amount of memory however
+    large the file.
+
+    <p>Occurrences go to a listener as soon as they are found, giving
+    the file, the occurrence's offset in characters from the start of
+    the file, and its line number.  Files that look binary, hidden
+    directories such as <code>.git</code>, and files too large to map
+    are skipped.
+*/
+public class FileSearch {
+	/** Default for the largest file to search, in bytes. */
+	public static final long DEFAULT_MAX_FILE_SIZE = 256L << 20;
+	// bytes checked for a NUL character to tell a binary file
+	private static final int BINARY_CHECK = 8192;
+	// characters decoded at a time
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private String quarry = "";
+	private boolean word = false;
+	private boolean ignoreCase = false;
+	private SearchPattern pattern = null;
+	// the sequence as bytes to scan for before decoding; null if not possible
+	private SearchPattern bytePattern = null;
+	private Charset charset = StandardCharsets.UTF_8;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private long maxFileSize = DEFAULT_MAX_FILE_SIZE;
+
+	/** Receives occurrences as they are found.
+	 */
+	public interface Listener {
+		/** Takes an occurrence.
+		 * Called from the searching threads, so occurrences in different
+		 * files may arrive in any order, though those within one file
+		 * arrive in order.
+		 * @param file the file holding the occurrence
+		 * @param offset index of the occurrence's first character, counting
+		 * characters rather than bytes from the start of the file
+		 * @param line line number of the occurrence, starting from 1
+		 */
+		void found(Path file, int offset, int line);
+	}
+
+	/** Creates a search.
+	 * @param quarry sequence to find
+	 * @param word if true, only find the sequence as a separate word
+	 * @param ignoreCase if true, ignore upper/lower case
+	 */
+	public FileSearch(String quarry, boolean word, boolean ignoreCase) {
+		this.quarry = quarry;
+		this.word = word;
+		this.ignoreCase = ignoreCase;
+		pattern = new SearchPattern(quarry, ignoreCase);
+		updateBytePattern();
+	}
+
+	/** Sets the encoding of the files.
+	 * @param charset the encoding; UTF-8 by default
+	 */
+	public void setCharset(Charset charset) {
+		this.charset = charset;
+		updateBytePattern();
+	}
+
+	/** Sets the number of files to search at once.
+	 * @param threads number of searching threads; by default, one per
+	 * processor
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(threads, 1);
+	}
+
+	/** Sets the largest file to search.
+	 * @param maxFileSize size in bytes above which files are skipped
+	 */
+	public void setMaxFileSize(long maxFileSize) {
+		this.maxFileSize = maxFileSize;
+	}
+
+	/** Decides whether files can be scanned as bytes before decoding.
+	 * That requires an encoding in which every ASCII character is a 
+	 * single byte that never appears within another character, and a
+	 * sequence of ASCII characters that, when ignoring case, no
+	 * non-ASCII character can stand in for, as the Kelvin sign can
+	 * for "k".
+	 */
+	private void updateBytePattern() {
+		bytePattern = null;
+		String name = charset.name();
+		if (!name.equals("UTF-8") && !name.equals("US-ASCII") 
+			&& !name.equals("ISO-8859-1")) {
+			return;
+		}
+		for (int i = 0; i < quarry.length(); i++) {
+			char c = quarry.charAt(i);
+			if (c >= 0x80 || ignoreCase && NonAsciiSpellings.has(c)) return;
+		}
+		bytePattern = new SearchPattern(quarry, ignoreCase);
+	}
+
+	/** Searches every file under a directory, returning once all have
+	 * been searched.
+	 * @param root the directory to search, or a single file
+	 * @param listener receives each occurrence as it is found
+	 * @param progress progress to report to, counting files searched
+	 * out of files found so far; may be <code>null</code>
+	 * @return number of occurrences found
+	 * @throws IOException if the directory can't be walked
+	 * @throws CancellationException if canceled
+	 * @throws RuntimeException if searching a file failed other than by
+	 * being unreadable, as when the listener throws; the search stops
+	 * @throws Error if searching a file ran out of memory or otherwise 
+	 * failed badly; the search stops
+	 */
+	public int search(
+		final Path root, 
+		final Listener listener, 
+		final Progress progress) 
+		throws IOException {
+		final AtomicInteger count = new AtomicInteger();
+		if (quarry.length() == 0) return 0;
+		final ExecutorService pool = Executors.newFixedThreadPool(threads);
+		// keep the walk from racing far ahead of the searches
+		final Semaphore pending = new Semaphore(threads * 4);
+		final AtomicInteger found = new AtomicInteger();
+		final AtomicInteger searched = new AtomicInteger();
+		// the first unexpected failure in a searching thread, if any
+		final AtomicReference<Throwable> failure = 
+			new AtomicReference<Throwable>();
+		try {
+			Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+				public FileVisitResult preVisitDirectory(
+					Path dir, BasicFileAttributes attrs) {
+					if (dir.getFileName() != null && dir.getFileName().toString().startsWith(".")
+						&& depth(dir) > 0) {
+						return FileVisitResult.SKIP_SUBTREE;
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				public FileVisitResult visitFile(
+					final Path file, BasicFileAttributes attrs) {
+					if (failure.get() != null) return FileVisitResult.TERMINATE;
+					if (!attrs.isRegularFile() || attrs.size() == 0 
+						|| attrs.size() > maxFileSize) {
+						return FileVisitResult.CONTINUE;
+					}
+					if (progress != null) {
+						progress.checkCanceled();
+						progress.begin(found.incrementAndGet());
+						progress.setDone(searched.get());
+					}
+					pending.acquireUninterruptibly();
+					pool.execute(new Runnable() {
+						public void run() {
+							try {
+								if ((progress == null || !progress.isCanceled())
+									&& failure.get() == null) {
+									count.addAndGet(searchFile(file, listener));
+								}
+							} catch (IOException e) {
+								// unreadable, or changed while mapped; skip it
+							} catch (RuntimeException e) {
+								failure.compareAndSet(null, e);
+							} catch (Error e) {
+								failure.compareAndSet(null, e);
+							} finally {
+								if (progress != null) {
+									progress.setDone(searched.incrementAndGet());
+								}
+								pending.release();
+							}
+						}
+					});
+					return FileVisitResult.CONTINUE;
+				}
+
+				public FileVisitResult visitFileFailed(Path file, IOException e) {
+					// skip files and directories that can't be read
+					return FileVisitResult.CONTINUE;
+				}
+
+				private int depth(Path dir) {
+					return dir.getNameCount() - root.getNameCount();
+				}
+			});
+			pool.shutdown();
+			while (!pool.awaitTermination(100, TimeUnit.MILLISECONDS)) {
+				if (progress != null) progress.checkCanceled();
+			}
+		} catch (InterruptedException e) {
+			throw new CancellationException();
+		} finally {
+			pool.shutdownNow();
+		}
+		Throwable t = failure.get();
+		if (t instanceof RuntimeException) throw (RuntimeException) t;
+		if (t instanceof Error) throw (Error) t;
+		if (progress != null) progress.checkCanceled();
+		return count.get();
+	}
+
+	/** Searches a single file.
+	 * @param file the file
+	 * @param listener receives each occurrence
+	 * @return number of occurrences found
+	 * @throws IOException if the file can't be read
+	 */
+	public int searchFile(Path file, Listener listener) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if (size == 0 || size > maxFileSize) return 0;
+			MappedByteBuffer bytes = 
+				channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if (isBinary(bytes)) return 0;
+			if (bytePattern != null 
+				&& bytePattern.indexOf(new ByteText(bytes), 0, (int) size) == -1) {
+				return 0;
+			}
+			
+			CharsetDecoder decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			return search(Channels.newReader(channel, decoder, -1), file, listener);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/** Searches a file's text a buffer at a time.
+	 * Occurrences may overlap, so the next search starts just after 
+	 * the start of each occurrence, and the last characters of each 
+	 * load, too few to decide on yet, are carried over to the next.
+	 * @param in the file's text
+	 * @param file the file, to give the listener
+	 * @param listener receives each occurrence
+	 * @return number of occurrences found
+	 * @throws IOException if the file can't be read
+	 */
+	private int search(Reader in, Path file, Listener listener) 
+		throws IOException {
+		int m = pattern.length();
+		char[] buf = new char[Math.max(BUFFER_SIZE, 4 * (m + 1))];
+		CharBuffer text = CharBuffer.wrap(buf);
+		int count = 0;
+		int n = 0; // characters in the buffer
+		int offset = 0; // offset in the file of the buffer's start
+		int before = -1; // the character just before the buffer; -1 if none
+		int line = 1;
+		int counted = 0; // where in the buffer lines have been counted to
+		boolean eof = false;
+		while (!eof) {
+			// fill the rest of the buffer
+			int read = 0;
+			while (n < buf.length && (read = in.read(buf, n, buf.length - n)) != -1) {
+				n += read;
+			}
+			eof = read == -1;
+			
+			// occurrences starting before the limit can be decided now, 
+			// including the character after each; the rest wait for more text
+			int limit = eof ? n - m + 1 : n - m;
+			int pos = 0;
+			int loc = 0;
+			while (pos < limit && (loc = pattern.indexOf(text, pos, limit)) != -1) {
+				pos = loc + 1;
+				if (word && !isWordAt(buf, n, loc, m, before)) continue;
+				for (; counted < loc; counted++) {
+					if (buf[counted] == '\n') line++;
+				}
+				listener.found(file, offset + loc, line);
+				count++;
+			}
+			
+			// carry over what can still start an occurrence
+			int keep = eof ? n : Math.max(limit, 0);
+			for (; counted < keep; counted++) {
+				if (buf[counted] == '\n') line++;
+			}
+			if (keep > 0) before = buf[keep - 1];
+			System.arraycopy(buf, keep, buf, 0, n - keep);
+			n -= keep;
+			counted -= keep;
+			offset += keep;
+		}
+		return count;
+	}
+
+	/** Checks whether an occurrence in the buffer stands as a separate 
+	 * word.
+	 * @param n number of characters in the buffer
+	 * @param before the character just before the buffer; -1 if none
+	 */
+	private static boolean isWordAt(char[] buf, int n, int loc, int m, int before) {
+		int prev = loc > 0 ? buf[loc - 1] : before;
+		int next = loc + m < n ? buf[loc + m] : -1;
+		return (prev == -1 || !SearchPattern.isWordChar((char) prev))
+			&& (next == -1 || !SearchPattern.isWordChar((char) next));
+	}
+
+	/** Checks whether a file looks binary, with a NUL character near
+	 * its start, as <code>grep</code> does.
+	 */
+	private static boolean isBinary(ByteBuffer bytes) {
+		int n = Math.min(bytes.limit(), BINARY_CHECK);
+		for (int i = 0; i < n; i++) {
+			if (bytes.get(i) == 0) return true;
+		}
+		return false;
+	}
+
+	/** The bytes of a file seen as characters, one per byte, for 
+	 * scanning for an ASCII sequence without decoding the file.
+	 */
+	private static class ByteText implements CharSequence {
+		private ByteBuffer bytes = null;
+
+		ByteText(ByteBuffer bytes) {
+			this.bytes = bytes;
+		}
+
+		public char charAt(int i) {
+			return (char) (bytes.get(i) & 0xFF);
+		}
+
+		public int length() {
+			return bytes.limit();
+		}
+
+		public CharSequence subSequence(int start, int end) {
+			ByteBuffer slice = bytes.duplicate();
+			slice.position(start);
+			slice.limit(end);
+			return new ByteText(slice.slice());
+		}
+	}
+
+	/** The ASCII characters that some non-ASCII character folds to when
+	 * ignoring case, such as "k" for the Kelvin sign.  Found the first
+	 * time a case-insensitive search needs them.
+	 */
+	private static class NonAsciiSpellings {
+		private static final boolean[] TABLE = build();
+
+		static boolean has(char c) {
+			return TABLE[SearchPattern.fold(c)];
+		}
+
+		private static boolean[] build() {
+			boolean[] table = new boolean[0x80];
+			for (int c = 0x80; c <= Character.MAX_VALUE; c++) {
+				char f = SearchPattern.fold((char) c);
+				if (f < 0x80) table[f] = true;
+			}
+			return table;
+		}
+	}
+}
@@ -47,6 +47,14 @@ import java.awt.event.*;
     expressions as well as options to tailor the search.
 */
 public class FindDialog extends JPanel {//JFrame {
+	/** Milliseconds to wait after a keystroke in the "find" field before
+	 * searching as the user types.
+	 */
+	public static final int FIND_TYPED_DELAY = 150;
+	// most frequent words to list in the stats area, and in its tool tip
+	private static final int TOP_WORDS = 5;
+	private static final int TOP_WORDS_TIP = 20;
+	
 	private JLabel tipsTitleLbl = null; // offers tips on using the plug-in 
 	private JLabel tipsLbl = null;
 	private JLabel findLbl = null; // label for the search field
@@ -58,21 +66,33 @@ public class FindDialog extends JPanel {//JFrame {
 	private JCheckBox selection = null; // search only within a highlighted section
 	private JCheckBox replaceAll = null; // replace all instances of search expression
 	private JCheckBox ignoreCase = null; // ignore upper/lower case
+	private JCheckBox regex = null; // treat the search expression as a regular expression
 	private JLabel resultsTitleLbl = null;
 	private JLabel resultsLbl = null;
+	private JLabel filesLbl = null; // searches and replacements in files
 	private JButton findBtn = null; // label for the search button
 	private JButton replaceBtn = null; // label for the replace button
 	private JButton statsBtn = null; // label for the stats button
+	private JButton cancelBtn = null; // stops a search running in the background
+	private Timer findTypedTimer = null; // searches once typing pauses
+	private CompiledQuery compiled = null; // the query, until its fields change
 	private JLabel charLbl = null; // label for the stats char value
 	private JLabel wordLbl = null; // label for the stats word value
 	private JLabel lineLbl = null; // label for the stats line value
 	private JLabel charCountLbl = null; // the actual character count
 	private JLabel wordCountLbl = null; // the actual word count
 	private JLabel lineCountLbl = null; // the actual line count
+	private JLabel distinctLbl = null; // label for the distinct word value
+	private JLabel topLbl = null; // label for the most frequent words
+	private JLabel distinctCountLbl = null; // the actual distinct word count
+	private JLabel topWordsLbl = null; // the most frequent words and counts
+	private JLabel accuracyLbl = null; // label for the error bounds
+	private JLabel accuracyValueLbl = null; // the estimates' error bounds
 	private String[] tips = {
 		"Tip: Searches and statistics begin from the cursor or start of selected area",
 		"Here's a secret: Use ^t for TABs and ^n for NEWLINEs",
-		"Psst!  Stats available for \"Selected area only\", too"
+		"Psst!  Stats available for \"Selected area only\", too",
+		"Regular expressions take \\t and \\n, and replacements take $1 for groups"
 	};
 		
 	/**Construct a find/replace dialog box
@@ -84,7 +104,9 @@ public class FindDialog extends JPanel {//JFrame {
 		KeyAdapter replaceEnter,
 		Action findAction,
 		Action replaceAction,
-		Action statsAction) {
+		Action statsAction,
+		Action cancelAction,
+		Action findTypedAction) {
 		//super("Search and Stats");
 		super(new GridBagLayout());
 		setSize(450, 250);
@@ -139,6 +161,28 @@ public class FindDialog extends JPanel {//JFrame {
 			0,
 			this);//contentPane);
 		find.addKeyListener(findEnter);
+		// search as the user types, but only once the typing pauses, so
+		// that a quick burst of keystrokes makes a single search
+		findTypedTimer = new Timer(FIND_TYPED_DELAY, findTypedAction);
+		findTypedTimer.setRepeats(false);
+		find.getDocument().addDocumentListener(new DocumentListener() {
+			public void insertUpdate(DocumentEvent e) {
+				findTypedTimer.restart();
+			}
+			public void removeUpdate(DocumentEvent e) {
+				findTypedTimer.restart();
+			}
+			public void changedUpdate(DocumentEvent e) {
+			}
+		});
+		// "Enter" searches at once
+		find.addKeyListener(new KeyAdapter() {
+			public void keyPressed(KeyEvent evt) {
+				if (evt.getKeyCode() == KeyEvent.VK_ENTER) {
+					findTypedTimer.stop();
+				}
+			}
+		});
 
 		// replace expression input
 		replaceLbl = new JLabel("Replace:");
@@ -264,6 +308,48 @@ public class FindDialog extends JPanel {//JFrame {
 			"Searches for both lower and upper case versions of the expression";
 		ignoreCase.setToolTipText(msg);
 		
+		// treat the search expression as a regular expression
+		regex = new JCheckBox("Regular expression");
+		LibTTx.addGridBagComponent(
+			regex,
+			constraints,
+			2,
+			4,
+			1,
+			1,
+			100,
+			0,
+			this);//contentPane);
+		regex.setMnemonic(KeyEvent.VK_G);
+		msg =
+			"Searches for a regular expression, with $1, $2, etc. in the replacement for its groups";
+		regex.setToolTipText(msg);
+		
+		// recompile the query only once the user changes it, so that
+		// pressing "Find" again reuses the folded sequence and its tables
+		DocumentListener queryEdited = new DocumentListener() {
+			public void insertUpdate(DocumentEvent e) {
+				compiled = null;
+			}
+			public void removeUpdate(DocumentEvent e) {
+				compiled = null;
+			}
+			public void changedUpdate(DocumentEvent e) {
+			}
+		};
+		find.getDocument().addDocumentListener(queryEdited);
+		replace.getDocument().addDocumentListener(queryEdited);
+		ItemListener optionToggled = new ItemListener() {
+			public void itemStateChanged(ItemEvent e) {
+				compiled = null;
+			}
+		};
+		JCheckBox[] options = 
+			{ word, wrap, selection, replaceAll, ignoreCase, regex };
+		for (int i = 0; i < options.length; i++) {
+			options[i].addItemListener(optionToggled);
+		}
+		
 		
 		// Results
 		/*
@@ -291,7 +377,20 @@ public class FindDialog extends JPanel {//JFrame {
 			constraints,
 			0,
 			5,
-			3,
+			2,
+			1,
+			100,
+			0,
+			this);//contentPane);
+
+		// stops a long search, whose progress shows in the results label
+		cancelBtn = new JButton(cancelAction);
+		LibTTx.addGridBagComponent(
+			cancelBtn,
+			constraints,
+			2,
+			5,
+			1,
 			1,
 			100,
 			0,
@@ -413,6 +512,93 @@ public class FindDialog extends JPanel {//JFrame {
 			100,
 			0,
 			this);//contentPane);
+
+		// word frequencies
+		distinctLbl = new JLabel("Distinct words:");
+		LibTTx.addGridBagComponent(
+			distinctLbl,
+			constraints,
+			0,
+			10,
+			2,
+			1,
+			100,
+			0,
+			this);//contentPane);
+		distinctCountLbl = new JLabel("");
+		distinctCountLbl.setHorizontalAlignment(JLabel.RIGHT);
+		LibTTx.addGridBagComponent(
+			distinctCountLbl,
+			constraints,
+			2,
+			10,
+			1,
+			1,
+			100,
+			0,
+			this);//contentPane);
+		topLbl = new JLabel("Top words:");
+		LibTTx.addGridBagComponent(
+			topLbl,
+			constraints,
+			0,
+			11,
+			1,
+			1,
+			100,
+			0,
+			this);//contentPane);
+		topWordsLbl = new JLabel("");
+		topWordsLbl.setHorizontalAlignment(JLabel.RIGHT);
+		LibTTx.addGridBagComponent(
+			topWordsLbl,
+			constraints,
+			1,
+			11,
+			2,
+			1,
+			100,
+			0,
+			this);//contentPane);
+		accuracyLbl = new JLabel("Accuracy:");
+		LibTTx.addGridBagComponent(
+			accuracyLbl,
+			constraints,
+			0,
+			12,
+			1,
+			1,
+			100,
+			0,
+			this);//contentPane);
+		accuracyValueLbl = new JLabel("");
+		accuracyValueLbl.setHorizontalAlignment(JLabel.RIGHT);
+		LibTTx.addGridBagComponent(
+			accuracyValueLbl,
+			constraints,
+			1,
+			12,
+			2,
+			1,
+			100,
+			0,
+			this);//contentPane);
+
+		// searches in files run alongside those on the document, so
+		// they report on their own line rather than in the results label
+		filesLbl = new JLabel("Files: ");
+		filesLbl.setHorizontalAlignment(JLabel.RIGHT);
+		filesLbl.setToolTipText("Results from searching files");
+		LibTTx.addGridBagComponent(
+			filesLbl,
+			constraints,
+			0,
+			13,
+			3,
+			1,
+			100,
+			0,
+			this);//contentPane);
 	}
 
 	/** Sets the window's icon.
@@ -465,6 +651,14 @@ public class FindDialog extends JPanel {//JFrame {
 		return ignoreCase.isSelected();
 	}
 
+	/** Gets the value of the "regex" check box.
+	 * 
+	 * @return value of the <code>regex JCheckBox</code>
+	 */
+	public boolean getRegex() {
+		return regex.isSelected();
+	}
+
 	/** Gets the value in the "find" text field.
 	 * 
 	 * @return value in the <code>find JFrame</code>
@@ -493,6 +687,39 @@ public class FindDialog extends JPanel {//JFrame {
 		return LibTTx.convertEscapeChars(replace.getText());
 	}
 
+	/** Captures the text fields and check boxes in a query, so that
+	 * the search itself never reads them.
+	 * Regular expressions keep their own escapes, such as <code>\t</code>,
+	 * rather than having <code>^t</code> converted.
+	 *
+	 * @return the query, as the dialog stands now
+	 */
+	public SearchQuery getQuery() {
+		boolean regex = getRegex();
+		return new SearchQuery(
+			regex ? getFindText() : getFindTextConverted(),
+			getReplaceTextConverted(),
+			getWord(),
+			getIgnoreCase(),
+			getWrap(),
+			getSelection(),
+			getReplaceAll(),
+			regex);
+	}
+
+	/** Gets the query compiled for searching, compiling it only if
+	 * the text fields or check boxes have changed since the last call.
+	 * Call from the event dispatch thread.
+	 *
+	 * @return the compiled query, as the dialog stands now
+	 */
+	public CompiledQuery getCompiledQuery() {
+		if (compiled == null) {
+			compiled = new CompiledQuery(getQuery());
+		}
+		return compiled;
+	}
+
 	/** Sets the value of the "charCountLbl" counter.
 	 * 
 	 * @return value of the <code>charCountLbl JLbl</code>
@@ -524,6 +751,13 @@ public class FindDialog extends JPanel {//JFrame {
 		resultsLbl.setText(s);
 	}
 	
+	/**Sets the label for searches and replacements in files.
+	 * @param s the files summary
+	*/
+	public void setFilesLbl(String s) {
+		filesLbl.setText(s);
+	}
+	
 	public void setTipsLbl(int weightedFront) {
 		tipsLbl.setText(LibTTx.pickWeightedStr(tips, weightedFront));
 	}
@@ -534,8 +768,89 @@ public class FindDialog extends JPanel {//JFrame {
 		setLineCountLbl(lineCount);
 	}
 	
+	/** Sets the statistics labels from a set of gathered statistics.
+	 * 
+	 * @param stats the character, word, and line counts to display
+	 */
+	public void setStatsLbls(TextStats stats) {
+		setStatsLbls(
+			stats.getChars() + "", 
+			stats.getWords() + "", 
+			stats.getLines() + "");
+	}
+	
+	/** Sets the word frequency labels: the number of distinct words,
+	 * and the most frequent words, with more of them in the tool tip.
+	 * 
+	 * @param words the word counts to display; <code>null</code> to 
+	 * clear the labels
+	 */
+	public void setWordFrequencyLbls(WordFrequency words) {
+		accuracyValueLbl.setText("");
+		accuracyValueLbl.setToolTipText(null);
+		if (words == null) {
+			distinctCountLbl.setText("");
+			topWordsLbl.setText("");
+			topWordsLbl.setToolTipText(null);
+			return;
+		}
+		distinctCountLbl.setText(words.getDistinctWords() + "");
+		int[] top = words.getTop(TOP_WORDS_TIP);
+		StringBuilder shown = new StringBuilder();
+		StringBuilder tip = new StringBuilder("<html>");
+		for (int i = 0; i < top.length; i++) {
+			String word = words.getWord(top[i]) + " " + words.getCount(top[i]);
+			if (i < TOP_WORDS) {
+				if (i > 0) shown.append(", ");
+				shown.append(word);
+			}
+			// words are only letters and digits, with nothing to escape
+			tip.append(i > 0 ? "<br>" : "").append(word);
+		}
+		topWordsLbl.setText(shown.toString());
+		topWordsLbl.setToolTipText(top.length > 0 ? tip.toString() : null);
+	}
+	
+	/** Sets the word frequency labels from estimates for text too large
+	 * to tally exactly, marking the estimated values with a "~" and 
+	 * giving their error bounds in the accuracy label.
+	 * 
+	 * @param estimates the word estimates to display
+	 */
+	public void setEstimateLbls(ApproximateStats estimates) {
+		double distinctError = estimates.getDistinctError();
+		distinctCountLbl.setText("~" + estimates.getDistinctWords());
+		int[] top = estimates.getTop(TOP_WORDS_TIP);
+		StringBuilder shown = new StringBuilder();
+		StringBuilder tip = new StringBuilder("<html>");
+		for (int i = 0; i < top.length; i++) {
+			String word = estimates.getWord(top[i]) + " ~" 
+				+ estimates.getCount(top[i]);
+			if (i < TOP_WORDS) {
+				if (i > 0) shown.append(", ");
+				shown.append(word);
+			}
+			tip.append(i > 0 ? "<br>" : "").append(word);
+		}
+		topWordsLbl.setText(shown.toString());
+		topWordsLbl.setToolTipText(top.length > 0 ? tip.toString() : null);
+		
+		// the distinct count is off by its standard error or less about
+		// two times in three, whereas a word's count is only ever too high
+		long countError = estimates.getCountError();
+		double percent = Math.round(distinctError * 1000) / 10.0;
+		accuracyValueLbl.setText("distinct +-" + percent + "%, counts +0-" 
+			+ countError);
+		accuracyValueLbl.setToolTipText("Estimated with fixed memory.  "
+			+ "Distinct words: standard error " + percent + "%.  "
+			+ "Word counts: at most " + countError + " too high, with " 
+			+ Math.round((1 - estimates.getCountErrorProbability()) * 100) 
+			+ "% confidence.");
+	}
+	
 	public void resetStatsLbls() {
 		setStatsLbls("", "", "");
+		setWordFrequencyLbls(null);
 	}
 
 }
\ No newline at end of file
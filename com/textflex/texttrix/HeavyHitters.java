@@ -0,0 +1,309 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+import java.util.*;
+
+/** The items, such as words, that a {@link CountMinSketch} estimates 
+    to occur most often, tracked as the items stream past.
+    Only a fixed number of candidates are kept, in a heap with the 
+    least frequent candidate on top.  An item whose estimate rises 
+    above that candidate's takes its place, so that the items that
+    occur most often end up among the candidates.  Items are known by
+    their 64-bit hashes, and an item only becomes a string once it
+    joins the candidates.
+    Candidates gathered separately merge, with each candidate's count
+    estimated again from the merged sketch.
+*/
+public class HeavyHitters {
+	/** Default number of candidates to keep. */
+	public static final int DEFAULT_CAPACITY = 32;
+
+	private int capacity = DEFAULT_CAPACITY;
+	private int size = 0; // number of candidates
+	// for each candidate: its hash, the item itself, its estimated 
+	// count, and its position in the heap
+	private long[] hashes = null;
+	private String[] words = null;
+	private int[] counts = null;
+	private int[] positions = null;
+	// min-heap of candidates by count
+	private int[] heap = null;
+	// hash table of one more than the candidate for each hash; 0 if empty
+	private long[] keys = null;
+	private int[] keySlots = null;
+
+	/** Creates an empty set of candidates with the default capacity.
+	 */
+	public HeavyHitters() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/** Creates an empty set of candidates.
+	 * @param capacity the most candidates to keep
+	 */
+	public HeavyHitters(int capacity) {
+		this.capacity = Math.max(capacity, 1);
+		hashes = new long[this.capacity];
+		words = new String[this.capacity];
+		counts = new int[this.capacity];
+		positions = new int[this.capacity];
+		heap = new int[this.capacity];
+		// keep the table at most a quarter full
+		int tableSize = Integer.highestOneBit(this.capacity * 4 - 1) << 1;
+		keys = new long[tableSize];
+		keySlots = new int[tableSize];
+	}
+
+	/** Offers an occurrence of a word as a candidate.
+	 * @param hash the word's hash
+	 * @param count the word's estimated count, including this occurrence
+	 * @param text text holding the occurrence
+	 * @param start start of the occurrence
+	 * @param end end of the occurrence
+	 * @param ignoreCase if true, keep the word in lower case
+	 */
+	public void offer(
+		long hash, 
+		int count, 
+		CharSequence text, 
+		int start, 
+		int end, 
+		boolean ignoreCase) {
+		// a candidate's estimate only grows, so an estimate no higher 
+		// than the least candidate's either belongs to that candidate,
+		// unchanged, or to a word that isn't a candidate
+		if (size == capacity && count <= counts[heap[0]]) return;
+		int slot = find(hash);
+		if (slot != -1) {
+			counts[slot] = count;
+			siftDown(positions[slot]);
+			return;
+		}
+		String word = null;
+		if (ignoreCase) {
+			StringBuilder s = new StringBuilder(end - start);
+			for (int i = start; i < end; i++) {
+				s.append(SearchPattern.fold(text.charAt(i)));
+			}
+			word = s.toString();
+		} else {
+			word = text.subSequence(start, end).toString();
+		}
+		admit(hash, count, word);
+	}
+
+	/** Adds a candidate that isn't yet among the candidates, displacing
+	 * the least frequent candidate if full.
+	 */
+	private void admit(long hash, int count, String word) {
+		int slot = 0;
+		boolean grown = size < capacity;
+		if (grown) {
+			slot = size++;
+		} else {
+			if (count <= counts[heap[0]]) return;
+			slot = heap[0];
+			removeKey(hashes[slot]);
+		}
+		hashes[slot] = hash;
+		words[slot] = word;
+		counts[slot] = count;
+		putKey(hash, slot);
+		if (grown) {
+			heap[size - 1] = slot;
+			positions[slot] = size - 1;
+			siftUp(size - 1);
+		} else {
+			siftDown(0);
+		}
+	}
+
+	/** Adds the candidates gathered separately to these candidates, 
+	 * keeping those that the merged sketch estimates to occur most 
+	 * often.
+	 * @param other the other candidates
+	 * @param sketch the sketch holding the counts of both sets of 
+	 * candidates, already merged
+	 */
+	public void merge(HeavyHitters other, CountMinSketch sketch) {
+		int n = size;
+		long[] mergedHashes = new long[n + other.size];
+		String[] mergedWords = new String[n + other.size];
+		System.arraycopy(hashes, 0, mergedHashes, 0, n);
+		System.arraycopy(words, 0, mergedWords, 0, n);
+		for (int i = 0; i < other.size; i++) {
+			if (find(other.hashes[i]) == -1) {
+				mergedHashes[n] = other.hashes[i];
+				mergedWords[n++] = other.words[i];
+			}
+		}
+		// start over, with every count estimated from the merged sketch
+		size = 0;
+		Arrays.fill(keySlots, 0);
+		for (int i = 0; i < n; i++) {
+			admit(mergedHashes[i], sketch.estimate(mergedHashes[i]), 
+				mergedWords[i]);
+		}
+	}
+
+	/** Gets the number of candidates.
+	 * @return number of candidates
+	 */
+	public int size() {
+		return size;
+	}
+
+	/** Gets the candidates estimated to occur most often.
+	 * @param n the most candidates to get
+	 * @return the candidates, identified as for {@link #getWord(int)}, 
+	 * most frequent first
+	 */
+	public int[] getTop(int n) {
+		n = Math.max(Math.min(n, size), 0);
+		// few enough candidates to simply sort them all
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++) {
+			int j = i;
+			while (j > 0 && counts[order[j - 1]] < counts[i]) {
+				order[j] = order[j - 1];
+				j--;
+			}
+			order[j] = i;
+		}
+		return Arrays.copyOf(order, n);
+	}
+
+	/** Gets a candidate.
+	 * @param word the candidate, as identified by {@link #getTop(int)}
+	 * @return the word
+	 */
+	public String getWord(int word) {
+		return words[word];
+	}
+
+	/** Gets a candidate's estimated count.
+	 * @param word the candidate, as identified by {@link #getTop(int)}
+	 * @return the estimated number of occurrences
+	 */
+	public int getCount(int word) {
+		return counts[word];
+	}
+
+	private void siftUp(int i) {
+		int slot = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (counts[heap[parent]] <= counts[slot]) break;
+			heap[i] = heap[parent];
+			positions[heap[i]] = i;
+			i = parent;
+		}
+		heap[i] = slot;
+		positions[slot] = i;
+	}
+
+	private void siftDown(int i) {
+		int slot = heap[i];
+		int child;
+		while ((child = 2 * i + 1) < size) {
+			// the lesser child
+			if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) {
+				child++;
+			}
+			if (counts[slot] <= counts[heap[child]]) break;
+			heap[i] = heap[child];
+			positions[heap[i]] = i;
+			i = child;
+		}
+		heap[i] = slot;
+		positions[slot] = i;
+	}
+
+	/** Gets the table index at which to start looking for a hash.
+	 */
+	private int home(long hash) {
+		// bits that neither the sketch nor the distinct count leans on
+		return (int) (hash >>> 20) & (keys.length - 1);
+	}
+
+	/** Finds the candidate with a given hash.
+	 * @return the candidate; -1 if none
+	 */
+	private int find(long hash) {
+		int mask = keys.length - 1;
+		for (int i = home(hash); keySlots[i] != 0; i = (i + 1) & mask) {
+			if (keys[i] == hash) return keySlots[i] - 1;
+		}
+		return -1;
+	}
+
+	private void putKey(long hash, int slot) {
+		int mask = keys.length - 1;
+		int i = home(hash);
+		while (keySlots[i] != 0) i = (i + 1) & mask;
+		keys[i] = hash;
+		keySlots[i] = slot + 1;
+	}
+
+	/** Removes a hash from the table, moving back any hashes after it
+	 * that would otherwise no longer be found.
+	 */
+	private void removeKey(long hash) {
+		int mask = keys.length - 1;
+		int i = home(hash);
+		while (keys[i] != hash || keySlots[i] == 0) i = (i + 1) & mask;
+		int j = i;
+		while (true) {
+			j = (j + 1) & mask;
+			if (keySlots[j] == 0) break;
+			int k = home(keys[j]);
+			// move the entry back unless its home lies cyclically 
+			// between the gap and the entry
+			boolean stays = i <= j 
+				? i < k && k <= j 
+				: i < k || k <= j;
+			if (!stays) {
+				keys[i] = keys[j];
+				keySlots[i] = keySlots[j];
+				i = j;
+			}
+		}
+		keySlots[i] = 0;
+	}
+}
@@ -0,0 +1,144 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+/** An estimate of the number of distinct items, such as words, seen 
+    in a stream too large to remember them all.
+    Each item's 64-bit hash picks one of <code>2^precision</code> 
+    registers with its top bits, and the register keeps the longest 
+    run of leading zeros seen among the remaining bits.  The more 
+    distinct items, the longer the longest run, whereas repeats of an
+    item change nothing.  The memory taken is one byte per register no
+    matter how many items, and the estimate's standard error is about
+    <code>1.04 / sqrt(2^precision)</code>.
+    Estimates gathered separately, such as from chunks of a text 
+    counted in parallel, merge into the estimate for all the chunks 
+    together.
+*/
+public class HyperLogLog {
+	/** Default precision, taking 16 KB for a standard error of about
+	 * 0.8%. */
+	public static final int DEFAULT_PRECISION = 14;
+	private static final int MIN_PRECISION = 4;
+	private static final int MAX_PRECISION = 18;
+
+	private int precision = DEFAULT_PRECISION;
+	private byte[] registers = null;
+
+	/** Creates an empty estimate with the default precision.
+	 */
+	public HyperLogLog() {
+		this(DEFAULT_PRECISION);
+	}
+
+	/** Creates an empty estimate.
+	 * @param precision number of hash bits that pick a register, from 
+	 * 4 to 18
+	 * @throws IllegalArgumentException if the precision is out of range
+	 */
+	public HyperLogLog(int precision) {
+		if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+			throw new IllegalArgumentException("Precision out of range: " 
+				+ precision);
+		}
+		this.precision = precision;
+		registers = new byte[1 << precision];
+	}
+
+	/** Counts an item.
+	 * @param hash the item's hash, with all 64 bits well mixed
+	 */
+	public void add(long hash) {
+		int register = (int) (hash >>> (64 - precision));
+		// a bit just past the remaining bits bounds the run of zeros
+		long rest = hash << precision | 1L << (precision - 1);
+		byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+		if (rank > registers[register]) registers[register] = rank;
+	}
+
+	/** Adds the items counted by another estimate to this one.
+	 * @param other estimate with the same precision
+	 * @throws IllegalArgumentException if the precisions differ
+	 */
+	public void merge(HyperLogLog other) {
+		if (other.precision != precision) {
+			throw new IllegalArgumentException("Precisions differ: " 
+				+ precision + " vs " + other.precision);
+		}
+		for (int i = 0; i < registers.length; i++) {
+			if (other.registers[i] > registers[i]) {
+				registers[i] = other.registers[i];
+			}
+		}
+	}
+
+	/** Estimates the number of distinct items counted.
+	 * @return the estimate
+	 */
+	public long estimate() {
+		int m = registers.length;
+		double sum = 0;
+		int zeros = 0;
+		for (int i = 0; i < m; i++) {
+			sum += 1.0 / (1L << registers[i]);
+			if (registers[i] == 0) zeros++;
+		}
+		double alpha = 0.7213 / (1 + 1.079 / m);
+		double estimate = alpha * m * m / sum;
+		// with many registers still empty, counting them is more exact
+		if (estimate <= 2.5 * m && zeros > 0) {
+			estimate = m * Math.log((double) m / zeros);
+		}
+		return Math.round(estimate);
+	}
+
+	/** Gets the standard error of the estimate, relative to the number
+	 * of distinct items.
+	 * @return the relative standard error, such as 0.008 for 0.8%
+	 */
+	public double getRelativeError() {
+		return 1.04 / Math.sqrt(registers.length);
+	}
+
+	/** Gets the memory that the registers take.
+	 * @return number of bytes
+	 */
+	public int getMemoryBytes() {
+		return registers.length;
+	}
+}
@@ -0,0 +1,256 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.textflex.texttrix;
+
+import java.util.*;
+
+/** Finds every occurrence of a query as it is being typed, reusing the
+    occurrences of the query typed just before.
+    An occurrence of "foob" must begin with an occurrence of "foo", so
+    when the user extends the query, only the earlier occurrences need
+    checking, and only for the characters just typed, rather than
+    searching the whole document again.  A short history of earlier
+    queries lets backspacing restore their occurrences at once, and
+    lets a query that backs up and then takes a different turn start
+    from the longest earlier query that it still begins with.  The
+    history is bounded by the memory its occurrences take rather than
+    by the number of queries, since the shortest queries have the most
+    occurrences; the oldest queries are forgotten first.
+
+    <p>The history keeps every occurrence regardless of word boundaries,
+    since "foo" occurring as a word says nothing about where "foob"
+    does; "Whole word only" is applied to a copy on the way out.
+    The history is dropped whenever the text or the case option changes.
+    Searches are synchronized, so that an engine shared among threads
+    can keep a history, though one per thread narrows better.
+*/
+public class IncrementalSearch {
+	/** Default memory limit for the history, in bytes. */
+	public static final long DEFAULT_MAX_BYTES = 16L << 20;
+	// rough bookkeeping cost of an entry beyond its offsets
+	private static final int ENTRY_OVERHEAD = 96;
+
+	private long maxBytes = DEFAULT_MAX_BYTES;
+	private long bytes = 0; // memory currently taken by the history
+	private String doc = null; // the text the history is for
+	private boolean ignoreCase = false;
+	// earlier queries and their occurrences, most recent first
+	private LinkedList<Entry> history = new LinkedList<Entry>();
+
+	/** A query and every one of its occurrences.
+	 */
+	private static class Entry {
+		private String quarry = null;
+		private IntList matches = null;
+
+		Entry(String quarry, IntList matches) {
+			this.quarry = quarry;
+			this.matches = matches;
+		}
+	}
+
+	/** Creates a search with the default memory limit.
+	 */
+	public IncrementalSearch() {
+	}
+
+	/** Creates a search.
+	 * @param maxBytes memory limit for the history's offsets, in bytes
+	 */
+	public IncrementalSearch(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/** Finds every occurrence of a query, including occurrences that
+	 * overlap one another, as {@link SearchPattern#findAll(CharSequence,
+	 * int, int, boolean, IntList)} would for the whole text.
+	 * @param text text to search
+	 * @param quarry sequence to find
+	 * @param word if true, only find the sequence as a separate word
+	 * @param ignoreCase if true, ignore upper/lower case
+	 * @return starting indices of the occurrences, in ascending order;
+	 * callers must not modify the list
+	 */
+	public synchronized IntList find(
+		String text, 
+		String quarry, 
+		boolean word, 
+		boolean ignoreCase) {
+		// an equal copy of the text, as when the host hands over the
+		// unchanged document again, keeps the history
+		if (doc == null || (doc != text && !doc.equals(text)) 
+			|| ignoreCase != this.ignoreCase) {
+			clear();
+			this.ignoreCase = ignoreCase;
+		}
+		doc = text;
+		
+		// an exact match from the history, as after backspacing, or else
+		// the longest earlier query that this one extends
+		Entry base = null;
+		for (Iterator<Entry> it = history.iterator(); it.hasNext(); ) {
+			Entry entry = it.next();
+			if (entry.quarry.equals(quarry)) {
+				it.remove();
+				bytes -= sizeOf(entry);
+				base = entry;
+				break;
+			}
+			if (quarry.startsWith(entry.quarry) && entry.quarry.length() > 0
+				&& (base == null || entry.quarry.length() > base.quarry.length())) {
+				base = entry;
+			}
+		}
+		Entry entry = null;
+		if (base != null && base.quarry.equals(quarry)) {
+			entry = base;
+		} else {
+			IntList matches = null;
+			if (base != null) {
+				matches = narrow(text, base, quarry);
+			} else {
+				matches = new IntList();
+				new SearchPattern(quarry, ignoreCase).findAll(
+					text, 0, text.length(), false, matches);
+			}
+			// trimmed before it is shared, since callers may hold it
+			// while other threads read it
+			matches.trimToSize();
+			entry = new Entry(quarry, matches);
+		}
+		remember(entry);
+		
+		return word ? wordsOnly(text, entry.matches, quarry.length()) : entry.matches;
+	}
+
+	/** Adds a query to the front of the history, forgetting the oldest
+	 * queries as necessary to stay within the memory limit.
+	 */
+	private void remember(Entry entry) {
+		long size = sizeOf(entry);
+		if (size > maxBytes) return; // would crowd out everything else
+		history.addFirst(entry);
+		bytes += size;
+		while (bytes > maxBytes) {
+			bytes -= sizeOf(history.removeLast());
+		}
+	}
+
+	private static long sizeOf(Entry entry) {
+		return ENTRY_OVERHEAD + 2L * entry.quarry.length() 
+			+ 4L * entry.matches.capacity();
+	}
+
+	/** Sets the memory limit, forgetting the oldest queries if necessary.
+	 * @param maxBytes memory limit for the history's offsets, in bytes
+	 */
+	public synchronized void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		while (bytes > maxBytes && !history.isEmpty()) {
+			bytes -= sizeOf(history.removeLast());
+		}
+	}
+
+	/** Gets the memory limit.
+	 * @return memory limit for the history's offsets, in bytes
+	 */
+	public synchronized long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/** Filters the occurrences of an earlier query down to those that go
+	 * on to spell out the query that extends it.
+	 * The earlier query's characters already match, so only the 
+	 * characters added since are compared.
+	 * @param text text searched
+	 * @param base the earlier query and its occurrences
+	 * @param quarry the query that extends it
+	 * @return the occurrences of the extended query
+	 */
+	private IntList narrow(String text, Entry base, String quarry) {
+		int from = base.quarry.length();
+		int m = quarry.length();
+		// the added characters, folded if ignoring case
+		char[] added = new char[m - from];
+		for (int i = 0; i < added.length; i++) {
+			added[i] = fold(quarry.charAt(from + i));
+		}
+		int last = text.length() - m;
+		IntList prev = base.matches;
+		IntList matches = new IntList();
+		for (int i = 0, n = prev.size(); i < n; i++) {
+			int loc = prev.get(i);
+			if (loc > last) break;
+			int j = 0;
+			int k = loc + from;
+			while (j < added.length && fold(text.charAt(k)) == added[j]) {
+				j++;
+				k++;
+			}
+			if (j == added.length) matches.add(loc);
+		}
+		return matches;
+	}
+
+	/** Keeps only the occurrences standing as separate words.
+	 */
+	private static IntList wordsOnly(String text, IntList matches, int m) {
+		IntList words = new IntList();
+		int len = text.length();
+		for (int i = 0, n = matches.size(); i < n; i++) {
+			int loc = matches.get(i);
+			if ((loc == 0 || !SearchPattern.isWordChar(text.charAt(loc - 1)))
+				&& (loc + m == len || !SearchPattern.isWordChar(text.charAt(loc + m)))) {
+				words.add(loc);
+			}
+		}
+		words.trimToSize();
+		return words;
+	}
+
+	private char fold(char c) {
+		return ignoreCase ? SearchPattern.fold(c) : c;
+	}
+
+	/** Drops the history, as when the document has changed.
+	 */
+	public synchronized void clear() {
+		history.clear();
+		bytes = 0;
+		doc = null;
+	}
+}
@@ -0,0 +1,299 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.textflex.texttrix;
+
+import javax.swing.event.*;
+import javax.swing.text.*;
+
+/** Character, word, and line counts for a whole document, kept up to
+    date as the document is edited.
+    Rather than counting the entire document again after each
+    keystroke, the model looks only at the edited span and the
+    characters just outside it, since an edit can only merge or split
+    the words touching its ends.  Inserted text is examined once it is
+    in the document; text about to be removed is examined through a
+    <code>DocumentFilter</code> placed in front of any filter the
+    document already has.  Removals that bypass the filter, such as
+    undoing an insertion, simply mark the counts stale, and the next
+    request for them counts the document again.
+
+    <p>Like the documents it watches, the model should only be used
+    from the event dispatch thread.
+*/
+public class IncrementalStats implements DocumentListener {
+	private Document doc = null; // the document to keep counts for
+	private DocumentFilter prevFilter = null; // the filter ours stands in front of
+	private StatsFilter filter = null;
+	private EventListenerList listeners = new EventListenerList();
+	private Segment seg = new Segment(); // reused view of the document's text
+	private int chars = 0;
+	private int words = 0;
+	private int lines = 1;
+	private boolean stale = true; // true if the counts need a full recount
+	// the change in counts predicted for the removal about to take place
+	private int pendingOffset = -1;
+	private int pendingLength = 0;
+	private int pendingWords = 0;
+	private int pendingNewlines = 0;
+	// results of the latest call to measure()
+	private int spanNewlines = 0;
+	private int wordsWithSpan = 0;
+	private int wordsWithoutSpan = 0;
+
+	/** Creates a statistics model for a document.
+	 * The model doesn't follow the document's edits until attached.
+	 * @param doc the document to count
+	 * @see #attach()
+	 */
+	public IncrementalStats(Document doc) {
+		this.doc = doc;
+	}
+
+	/** Starts following the document's edits.
+	 */
+	public void attach() {
+		doc.addDocumentListener(this);
+		if (doc instanceof AbstractDocument) {
+			AbstractDocument abstractDoc = (AbstractDocument) doc;
+			prevFilter = abstractDoc.getDocumentFilter();
+			filter = new StatsFilter();
+			abstractDoc.setDocumentFilter(filter);
+		}
+		stale = true;
+	}
+
+	/** Stops following the document's edits, restoring any filter the
+	 * document had before.
+	 */
+	public void detach() {
+		doc.removeDocumentListener(this);
+		if (filter != null) {
+			AbstractDocument abstractDoc = (AbstractDocument) doc;
+			// leave alone any filter that another party has since installed
+			if (abstractDoc.getDocumentFilter() == filter) {
+				abstractDoc.setDocumentFilter(prevFilter);
+			}
+			filter = null;
+			prevFilter = null;
+		}
+	}
+
+	/** Gets the document's current statistics.
+	 * @return counts for the whole document
+	 */
+	public TextStats getStats() {
+		if (stale) {
+			recount();
+		}
+		return new TextStats(chars, words, lines);
+	}
+
+	/** Adds a listener to notify after each edit to the counts.
+	 * @param l listener to add
+	 */
+	public void addChangeListener(ChangeListener l) {
+		listeners.add(ChangeListener.class, l);
+	}
+
+	/** Removes a listener.
+	 * @param l listener to remove
+	 */
+	public void removeChangeListener(ChangeListener l) {
+		listeners.remove(ChangeListener.class, l);
+	}
+
+	/** Updates the counts for text just inserted into the document.
+	 * @param e the insertion
+	 */
+	public void insertUpdate(DocumentEvent e) {
+		if (!stale && measure(e.getOffset(), e.getLength())) {
+			chars += e.getLength();
+			words += wordsWithSpan - wordsWithoutSpan;
+			lines += spanNewlines;
+		}
+		fireStateChanged();
+	}
+
+	/** Updates the counts for text just removed from the document, using
+	 * the counts that the filter took before the removal.
+	 * @param e the removal
+	 */
+	public void removeUpdate(DocumentEvent e) {
+		if (!stale) {
+			if (e.getOffset() == pendingOffset && e.getLength() == pendingLength) {
+				chars -= pendingLength;
+				words += pendingWords;
+				lines -= pendingNewlines;
+			} else {
+				// removed without passing through the filter, eg by an undo
+				stale = true;
+			}
+		}
+		pendingOffset = -1;
+		fireStateChanged();
+	}
+
+	/** Ignores attribute changes, which leave the text alone.
+	 * @param e the change
+	 */
+	public void changedUpdate(DocumentEvent e) {
+	}
+
+	/** Counts the whole document from scratch.
+	 */
+	private void recount() {
+		try {
+			doc.getText(0, doc.getLength(), seg);
+			TextStats stats = TextStats.scan(seg, 0, seg.length());
+			chars = stats.getChars();
+			words = stats.getWords();
+			lines = stats.getLines();
+			stale = false;
+		} catch (BadLocationException e) {
+			// leave the counts stale to try again next time
+		}
+	}
+
+	/** Measures a span of the document along with the character on
+	 * either side of it.  Each neighbouring character stands in for the
+	 * whole word it may belong to, so comparing the number of words with
+	 * and without the span tells how the span changes the total.
+	 * @param offset start of the span
+	 * @param length number of characters in the span
+	 * @return true if the span could be read
+	 */
+	private boolean measure(int offset, int length) {
+		int lo = Math.max(offset - 1, 0);
+		int hi = Math.min(offset + length + 1, doc.getLength());
+		try {
+			doc.getText(lo, hi - lo, seg);
+		} catch (BadLocationException e) {
+			stale = true;
+			return false;
+		}
+		int spanStart = offset - lo;
+		spanNewlines = 
+			TextStats.scan(seg, spanStart, spanStart + length).getLines() - 1;
+		wordsWithSpan = TextStats.scan(seg, 0, seg.length()).getWords();
+		boolean before = lo < offset && SearchPattern.isWordChar(seg.charAt(0));
+		boolean after = hi > offset + length 
+			&& SearchPattern.isWordChar(seg.charAt(seg.length() - 1));
+		// without the span, the neighbours would join into a single word
+		wordsWithoutSpan = before && after ? 1 : (before ? 1 : 0) + (after ? 1 : 0);
+		return true;
+	}
+
+	/** Predicts the change in counts from removing a span, while the span
+	 * is still in the document.
+	 * @param offset start of the span to remove
+	 * @param length number of characters to remove
+	 */
+	private void prepareRemove(int offset, int length) {
+		pendingOffset = -1;
+		if (stale || length <= 0 || !measure(offset, length)) return;
+		pendingOffset = offset;
+		pendingLength = length;
+		pendingWords = wordsWithoutSpan - wordsWithSpan;
+		pendingNewlines = spanNewlines;
+	}
+
+	/** Notifies the listeners that the counts have changed.
+	 */
+	private void fireStateChanged() {
+		Object[] list = listeners.getListenerList();
+		ChangeEvent e = null;
+		for (int i = list.length - 2; i >= 0; i -= 2) {
+			if (list[i] == ChangeListener.class) {
+				if (e == null) e = new ChangeEvent(this);
+				((ChangeListener) list[i + 1]).stateChanged(e);
+			}
+		}
+	}
+
+	/** Looks at text about to be removed, then passes each edit on to
+	 * the document's original filter, if any.
+	 */
+	private class StatsFilter extends DocumentFilter {
+		public void insertString(
+			DocumentFilter.FilterBypass fb,
+			int offset,
+			String string,
+			AttributeSet attr) throws BadLocationException {
+			if (prevFilter != null) {
+				prevFilter.insertString(fb, offset, string, attr);
+			} else {
+				super.insertString(fb, offset, string, attr);
+			}
+		}
+
+		public void remove(
+			DocumentFilter.FilterBypass fb,
+			int offset,
+			int length) throws BadLocationException {
+			prepareRemove(offset, length);
+			try {
+				if (prevFilter != null) {
+					prevFilter.remove(fb, offset, length);
+				} else {
+					super.remove(fb, offset, length);
+				}
+			} finally {
+				// a filter may have dropped or altered the removal
+				pendingOffset = -1;
+			}
+		}
+
+		public void replace(
+			DocumentFilter.FilterBypass fb,
+			int offset,
+			int length,
+			String text,
+			AttributeSet attrs) throws BadLocationException {
+			prepareRemove(offset, length);
+			try {
+				if (prevFilter != null) {
+					prevFilter.replace(fb, offset, length, text, attrs);
+				} else {
+					super.replace(fb, offset, length, text, attrs);
+				}
+			} finally {
+				// a filter may have dropped or altered the removal
+				pendingOffset = -1;
+			}
+		}
+	}
+}
@@ -0,0 +1,174 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.textflex.texttrix;
+
+import java.util.*;
+
+/** A growable list of <code>int</code>s, such as match offsets.
+    Stores the values in a plain array that doubles as it fills, so
+    that collecting offsets never boxes them into <code>Integer</code>s.
+*/
+public class IntList {
+	private int[] values = null; // the values, followed by spare room
+	private int size = 0; // number of values in use
+
+	/** Creates an empty list with room for a few values.
+	 */
+	public IntList() {
+		this(16);
+	}
+
+	/** Creates an empty list.
+	 * @param capacity number of values to make room for
+	 */
+	public IntList(int capacity) {
+		values = new int[Math.max(capacity, 1)];
+	}
+
+	/** Adds a value to the end of the list.
+	 * @param value value to add
+	 */
+	public void add(int value) {
+		if (size == values.length) {
+			grow(size + 1);
+		}
+		values[size++] = value;
+	}
+
+	/** Adds a range of another list's values to the end of this list.
+	 * @param list list to copy from
+	 * @param from index of the first value to copy
+	 */
+	public void addAll(IntList list, int from) {
+		int n = list.size - from;
+		if (n <= 0) return;
+		if (size + n > values.length) {
+			grow(size + n);
+		}
+		System.arraycopy(list.values, from, values, size, n);
+		size += n;
+	}
+
+	/** Makes room for at least the given number of values.
+	 */
+	private void grow(int capacity) {
+		int n = Math.max(capacity, values.length * 2);
+		if (n < 0) n = Integer.MAX_VALUE - 8; // overflowed
+		values = Arrays.copyOf(values, n);
+	}
+
+	/** Gets a value.
+	 * @param i index of the value
+	 * @return the value
+	 */
+	public int get(int i) {
+		if (i >= size) {
+			throw new IndexOutOfBoundsException(i + " >= " + size);
+		}
+		return values[i];
+	}
+
+	/** Replaces a value.
+	 * @param i index of the value
+	 * @param value the new value
+	 */
+	public void set(int i, int value) {
+		if (i >= size) {
+			throw new IndexOutOfBoundsException(i + " >= " + size);
+		}
+		values[i] = value;
+	}
+
+	/** Gets the number of values.
+	 * @return number of values in the list
+	 */
+	public int size() {
+		return size;
+	}
+
+	/** Gets the number of values the list can hold before growing.
+	 * @return the list's capacity
+	 */
+	public int capacity() {
+		return values.length;
+	}
+
+	/** Releases any spare room beyond the values in use.
+	 */
+	public void trimToSize() {
+		if (size < values.length) {
+			values = Arrays.copyOf(values, Math.max(size, 1));
+		}
+	}
+
+	/** Removes all the values, keeping the room they took.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/** Searches a list of values sorted in ascending order.
+	 * @param value value to find
+	 * @return index of the value if present; otherwise, 
+	 * <code>(-(insertion point) - 1)</code>, as with
+	 * <code>Arrays.binarySearch</code>
+	 */
+	public int binarySearch(int value) {
+		return Arrays.binarySearch(values, 0, size, value);
+	}
+
+	/** Finds the first value at or above a given value in a list sorted
+	 * in ascending order, such as the next match at or after the caret.
+	 * @param value value to look for
+	 * @return index of the first value at or above <code>value</code>;
+	 * the list's size if there is none
+	 */
+	public int ceilingIndex(int value) {
+		int i = binarySearch(value);
+		if (i < 0) return -i - 1;
+		// step back over any duplicates
+		while (i > 0 && values[i - 1] == value) i--;
+		return i;
+	}
+
+	/** Copies the values into an array of their own.
+	 * @return array holding exactly the list's values
+	 */
+	public int[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+}
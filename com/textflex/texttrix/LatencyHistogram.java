@@ -0,0 +1,125 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+import java.util.concurrent.atomic.*;
+
+/** Counts how long operations take, in buckets fine enough to read
+    off percentiles such as the median to within about 6%.
+    Each power of two is split into 16 buckets of equal width, so that
+    a fixed array of counters covers every duration from a nanosecond
+    up, and recording a duration only increments a counter: nothing
+    is allocated, and no lock is taken, so that any number of threads
+    can record at once.
+*/
+public class LatencyHistogram {
+	// buckets per power of two, as bits
+	private static final int SUB_BITS = 4;
+	private static final int SUB = 1 << SUB_BITS;
+	// enough buckets for any non-negative long
+	private static final int BUCKETS = (64 - SUB_BITS) * SUB;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	/** Records a duration.
+	 * @param nanos the duration, in nanoseconds; negative durations,
+	 * as from a clock adjustment, count as zero
+	 */
+	public void record(long nanos) {
+		counts.incrementAndGet(bucket(Math.max(nanos, 0)));
+	}
+
+	/** Gets the number of durations recorded.
+	 * @return the number of durations
+	 */
+	public long getCount() {
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			n += counts.get(i);
+		}
+		return n;
+	}
+
+	/** Gets a percentile of the recorded durations.
+	 * Reads the counters without stopping the threads recording, so
+	 * that durations recorded meanwhile may or may not count.
+	 * @param percent the percentile, from 0 to 100, such as 50 for the
+	 * median or 99 for all but the slowest 1%
+	 * @return the longest duration that the percentile's bucket holds,
+	 * in nanoseconds; 0 if nothing has been recorded
+	 */
+	public long getPercentile(double percent) {
+		long n = getCount();
+		if (n == 0) return 0;
+		long rank = Math.max((long) Math.ceil(percent / 100 * n), 1);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) return highest(i);
+		}
+		return highest(BUCKETS - 1);
+	}
+
+	/** Forgets every duration recorded so far.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+	}
+
+	/** Gets the bucket for a duration.
+	 * Durations below 16 get a bucket each; above, the highest set bit
+	 * picks the power of two, and the next four bits the bucket within it.
+	 */
+	private static int bucket(long nanos) {
+		if (nanos < SUB) return (int) nanos;
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB - 1);
+		return (exponent - SUB_BITS + 1) * SUB + sub;
+	}
+
+	/** Gets the longest duration that a bucket holds.
+	 */
+	private static long highest(int bucket) {
+		if (bucket < SUB) return bucket;
+		int shift = bucket / SUB - 1;
+		long lowest = (long) (SUB + bucket % SUB) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
@@ -0,0 +1,168 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+import java.util.*;
+
+/** The offsets at which each line of a text starts, for numbering the
+    lines of occurrences and counting the lines of any section without
+    reading the section again.
+    The offsets are gathered in a single pass over the text, after 
+    which each question takes a binary search.  Lines end at each 
+    <code>\n</code>, and a text always has at least one line, even if
+    empty.  An index never changes, and can be shared among threads,
+    but only describes the text it was built from.
+*/
+public class LineIndex {
+	// offset of each line's first character, in ascending order
+	private final int[] starts;
+	private final int length; // length of the indexed text
+
+	/** Indexes the lines of a text.
+	 * @param s text to index; must not change while indexing
+	 */
+	public LineIndex(CharSequence s) {
+		length = s.length();
+		IntList lines = new IntList();
+		lines.add(0);
+		if (s instanceof String) {
+			// the string's own search is the quickest way to the next line
+			String str = (String) s;
+			int n = -1;
+			while ((n = str.indexOf('\n', n + 1)) != -1) {
+				lines.add(n + 1);
+			}
+		} else {
+			for (int i = 0; i < length; i++) {
+				if (s.charAt(i) == '\n') lines.add(i + 1);
+			}
+		}
+		starts = lines.toArray();
+	}
+
+	/** Gets the length of the indexed text.
+	 * @return number of characters
+	 */
+	public int getTextLength() {
+		return length;
+	}
+
+	/** Gets the number of lines in the entire text.
+	 * @return number of lines, at least 1
+	 */
+	public int getLineCount() {
+		return starts.length;
+	}
+
+	/** Counts the lines in a section of the text, as 
+	 * <code>Plug.lineCount</code> does: one more than the number of
+	 * <code>\n</code>s within the section.
+	 * @param start first character of the section
+	 * @param end first character no longer in the section
+	 * @return number of lines, at least 1
+	 */
+	public int getLineCount(int start, int end) {
+		start = Math.max(start, 0);
+		end = Math.min(end, length);
+		// each \n within the section starts a line just after it
+		int newlines = ceiling(end + 1) - ceiling(start + 1);
+		return 1 + Math.max(newlines, 0);
+	}
+
+	/** Gets the line holding a character.
+	 * @param offset offset of the character, from 0 to the text's 
+	 * length
+	 * @return the line number, counting from 1
+	 */
+	public int getLine(int offset) {
+		// the number of lines starting at or before the offset
+		return ceiling(offset + 1);
+	}
+
+	/** Gets the position of a character within its line.
+	 * @param offset offset of the character, from 0 to the text's 
+	 * length
+	 * @return the column, counting from 1
+	 */
+	public int getColumn(int offset) {
+		return offset - starts[getLine(offset) - 1] + 1;
+	}
+
+	/** Gets where a line starts.
+	 * @param line the line number, counting from 1
+	 * @return offset of the line's first character
+	 */
+	public int getLineStart(int line) {
+		return starts[line - 1];
+	}
+
+	/** Gets the lines holding each of a list of characters, such as
+	 * the occurrences that a find-all turned up.
+	 * @param offsets offsets of the characters, in ascending order
+	 * @return the line number of each character, counting from 1
+	 */
+	public IntList getLines(IntList offsets) {
+		int n = offsets.size();
+		IntList lines = new IntList(n);
+		// each search only needs to look past the previous line
+		int from = 0;
+		for (int i = 0; i < n; i++) {
+			int line = ceiling(from, offsets.get(i) + 1);
+			lines.add(line);
+			from = line - 1;
+		}
+		return lines;
+	}
+
+	/** Finds the first line starting at or after an offset.
+	 * @return index of the line in <code>starts</code>; the number of
+	 * lines if none
+	 */
+	private int ceiling(int offset) {
+		return ceiling(0, offset);
+	}
+
+	/** Finds the first line starting at or after an offset, looking 
+	 * no earlier than a given line.
+	 */
+	private int ceiling(int from, int offset) {
+		int i = Arrays.binarySearch(starts, from, starts.length, offset);
+		// line starts never repeat
+		return i < 0 ? -i - 1 : i;
+	}
+}
@@ -0,0 +1,230 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.textflex.texttrix;
+
+import java.lang.ref.*;
+import java.util.*;
+
+/** A bounded cache of find-all results, so that pressing "Find" again
+    on an unchanged document looks up the next occurrence rather than
+    searching again.
+    Each entry holds the starting indices of every occurrence of one
+    query in one version of a document, keyed by the document's text
+    together with the query's sequence and options.  A lookup hashes
+    on a fingerprint of the text but only hits if the text itself is 
+    the same, so an edited document whose fingerprint happens to match 
+    an earlier version's never gets the earlier offsets.  Outdated 
+    entries simply age out of the cache, or can be dropped at once with
+    {@link #clear()}.  The least recently used entries are evicted once
+    the offsets held exceed the memory limit.
+
+    <p>Entries refer to their text only weakly, so that the cache never
+    keeps old versions of a document alive.  The most recent text is
+    held strongly, and a later text equal to it is swapped for it, so
+    that searching the same document again hits even if each search
+    is handed a fresh copy of the text.
+*/
+public class MatchCache {
+	/** Default memory limit, in bytes. */
+	public static final long DEFAULT_MAX_BYTES = 32L << 20;
+	// rough bookkeeping cost of an entry beyond its offsets
+	private static final int ENTRY_OVERHEAD = 96;
+
+	private long maxBytes = DEFAULT_MAX_BYTES;
+	private long bytes = 0; // memory currently taken by the entries
+	// text of the latest lookup, which keeps its entries from being
+	// collected
+	private String recent = null;
+	// entries in order of access, least recently used first
+	private LinkedHashMap<Key, IntList> entries = 
+		new LinkedHashMap<Key, IntList>(16, 0.75f, true);
+
+	/** Creates a cache with the default memory limit.
+	 */
+	public MatchCache() {
+	}
+
+	/** Creates a cache.
+	 * @param maxBytes memory limit for the cached offsets, in bytes
+	 */
+	public MatchCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/** Computes a fingerprint of a document's text.
+	 * The hash is cached by the string itself, so fingerprinting the
+	 * same string again is free.
+	 * @param text the document's text
+	 * @return the fingerprint
+	 */
+	public static long fingerprint(String text) {
+		return ((long) text.length() << 32) | (text.hashCode() & 0xFFFFFFFFL);
+	}
+
+	/** Gets the cached occurrences of a query.
+	 * @param text the document's text
+	 * @param quarry sequence searched for
+	 * @param word whether the sequence was searched for as a separate word
+	 * @param ignoreCase whether upper/lower case was ignored
+	 * @return starting indices of the occurrences, or <code>null</code>
+	 * if not cached; callers must not modify the list
+	 */
+	public synchronized IntList get(
+		String text, 
+		String quarry, 
+		boolean word, 
+		boolean ignoreCase) {
+		return entries.get(new Key(canonical(text), quarry, word, ignoreCase));
+	}
+
+	/** Caches the occurrences of a query, evicting the least recently 
+	 * used entries as necessary to stay within the memory limit.
+	 * @param text the document's text
+	 * @param quarry sequence searched for
+	 * @param word whether the sequence was searched for as a separate word
+	 * @param ignoreCase whether upper/lower case was ignored
+	 * @param matches starting indices of all the occurrences in the 
+	 * document; must not be modified afterward
+	 */
+	public synchronized void put(
+		String text, 
+		String quarry, 
+		boolean word, 
+		boolean ignoreCase,
+		IntList matches) {
+		long size = sizeOf(quarry, matches);
+		if (size > maxBytes) return; // would crowd out everything else
+		Key key = new Key(canonical(text), quarry, word, ignoreCase);
+		IntList prev = entries.put(key, matches);
+		if (prev != null) bytes -= sizeOf(quarry, prev);
+		bytes += size;
+		// entries whose text has been collected can never hit again
+		Iterator<Map.Entry<Key, IntList>> it = entries.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Key, IntList> entry = it.next();
+			if (entry.getKey().text.get() == null) {
+				bytes -= sizeOf(entry.getKey().quarry, entry.getValue());
+				it.remove();
+			}
+		}
+		it = entries.entrySet().iterator();
+		while (bytes > maxBytes && it.hasNext()) {
+			Map.Entry<Key, IntList> eldest = it.next();
+			bytes -= sizeOf(eldest.getKey().quarry, eldest.getValue());
+			it.remove();
+		}
+	}
+
+	/** Drops every entry, as when the document has changed.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+		recent = null;
+	}
+
+	/** Sets the memory limit, evicting entries if necessary.
+	 * @param maxBytes memory limit for the cached offsets, in bytes
+	 */
+	public synchronized void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		Iterator<Map.Entry<Key, IntList>> it = entries.entrySet().iterator();
+		while (bytes > maxBytes && it.hasNext()) {
+			Map.Entry<Key, IntList> eldest = it.next();
+			bytes -= sizeOf(eldest.getKey().quarry, eldest.getValue());
+			it.remove();
+		}
+	}
+
+	/** Gets the memory limit.
+	 * @return memory limit for the cached offsets, in bytes
+	 */
+	public synchronized long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/** Swaps a text for the most recent one if the two are equal, or
+	 * else makes it the most recent, so that entries for the same text
+	 * share the one copy that the cache holds.
+	 */
+	private String canonical(String text) {
+		if (recent != null && recent.equals(text)) return recent;
+		recent = text;
+		return text;
+	}
+
+	private static long sizeOf(String quarry, IntList matches) {
+		return ENTRY_OVERHEAD + 2L * quarry.length() + 4L * matches.capacity();
+	}
+
+	/** Identifies a query on one version of a document.
+	 */
+	private static class Key {
+		private WeakReference<String> text = null;
+		private long doc = 0; // fingerprint of the text
+		private String quarry = null;
+		private boolean word = false;
+		private boolean ignoreCase = false;
+
+		Key(String text, String quarry, boolean word, boolean ignoreCase) {
+			this.text = new WeakReference<String>(text);
+			doc = fingerprint(text);
+			this.quarry = quarry;
+			this.word = word;
+			this.ignoreCase = ignoreCase;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) return false;
+			Key k = (Key) o;
+			if (doc != k.doc || word != k.word 
+				|| ignoreCase != k.ignoreCase || !quarry.equals(k.quarry)) {
+				return false;
+			}
+			// a matching fingerprint may still be a different text
+			String s = text.get();
+			String t = k.text.get();
+			return s != null && t != null && (s == t || s.equals(t));
+		}
+
+		public int hashCode() {
+			int h = (int) (doc ^ (doc >>> 32));
+			h = 31 * h + quarry.hashCode();
+			return 4 * h + (word ? 2 : 0) + (ignoreCase ? 1 : 0);
+		}
+	}
+}
@@ -0,0 +1,264 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.textflex.texttrix;
+
+import java.util.*;
+
+/** Replaces a whole list of sequences, each with its own replacement,
+    in a single pass over the text.
+    The sequences are compiled into an Aho-Corasick automaton, which
+    follows every sequence at once as it reads each character, so
+    the text is scanned and copied only once however many pairs there
+    are.
+
+    <p>Where occurrences overlap, the leftmost one wins, and among
+    those starting at the same place, the longest.  Scanning then
+    resumes just past the winner, so replacements never overlap, just
+    as when <code>Plug.replace</code> handles a single sequence.
+    For example, replacing "he", "hers", and "she" in "ushers" replaces
+    only "she", and then nothing, since "hers" overlaps it.
+    "Whole word only" and "Ignore case" apply to every sequence alike.
+*/
+public class MultiReplace {
+	private String[] quarries = null; // the uncompiled sequences
+	private String[] replacements = null; // replacement for each sequence
+	private boolean word = false;
+	private boolean ignoreCase = false;
+	// the automaton's nodes, each standing for a prefix of some sequences;
+	// node 0 is the root, standing for the empty prefix
+	private char[][] childChars = null; // sorted characters leading to children
+	private int[][] children = null; // the child reached by each character
+	private int[] fail = null; // node for the longest proper suffix of the prefix
+	private int[] depth = null; // length of the prefix
+	private int[] output = null; // sequence ending at the node; -1 if none
+	// nearest node along the failure links at which a sequence ends
+	private int[] nextOutput = null;
+
+	/** Compiles a list of sequences and their replacements.
+	 * Empty sequences are ignored, and if a sequence appears more than
+	 * once, the first of its replacements is used.
+	 * @param quarries sequences to find
+	 * @param replacements the replacement for each sequence
+	 * @param word if true, only replace sequences found as separate
+	 * words, with only non-letters/non-digits surrounding them
+	 * @param ignoreCase if true, ignore upper/lower case
+	 */
+	public MultiReplace(
+		String[] quarries, 
+		String[] replacements, 
+		boolean word, 
+		boolean ignoreCase) {
+		if (quarries.length != replacements.length) {
+			throw new IllegalArgumentException(quarries.length 
+				+ " sequences but " + replacements.length + " replacements");
+		}
+		this.quarries = quarries.clone();
+		this.replacements = replacements.clone();
+		this.word = word;
+		this.ignoreCase = ignoreCase;
+		build(quarries);
+	}
+
+	/** Checks whether the automaton was compiled from the given pairs
+	 * and options, so that it can be reused for them.
+	 * @param quarries sequences to find
+	 * @param replacements the replacement for each sequence
+	 * @param word whether to only replace separate words
+	 * @param ignoreCase whether to ignore upper/lower case
+	 * @return true if compiling the pairs anew would give the same automaton
+	 */
+	public boolean isCompiledFrom(
+		String[] quarries, 
+		String[] replacements, 
+		boolean word, 
+		boolean ignoreCase) {
+		return this.word == word && this.ignoreCase == ignoreCase
+			&& Arrays.equals(this.quarries, quarries)
+			&& Arrays.equals(this.replacements, replacements);
+	}
+
+	/** Builds the trie of sequences, then the failure links breadth-first.
+	 */
+	private void build(String[] quarries) {
+		List<TreeMap<Character, Integer>> trie = 
+			new ArrayList<TreeMap<Character, Integer>>();
+		IntList depths = new IntList();
+		IntList outputs = new IntList();
+		trie.add(new TreeMap<Character, Integer>());
+		depths.add(0);
+		outputs.add(-1);
+		for (int i = 0; i < quarries.length; i++) {
+			String quarry = quarries[i];
+			if (quarry.length() == 0) continue;
+			int node = 0;
+			for (int j = 0; j < quarry.length(); j++) {
+				char c = fold(quarry.charAt(j));
+				Integer child = trie.get(node).get(c);
+				if (child == null) {
+					child = trie.size();
+					trie.get(node).put(c, child);
+					trie.add(new TreeMap<Character, Integer>());
+					depths.add(j + 1);
+					outputs.add(-1);
+				}
+				node = child;
+			}
+			// the first replacement given for a sequence wins
+			if (outputs.get(node) == -1) outputs.set(node, i);
+		}
+		
+		// flatten the trie into arrays for fast scanning
+		int n = trie.size();
+		childChars = new char[n][];
+		children = new int[n][];
+		for (int node = 0; node < n; node++) {
+			TreeMap<Character, Integer> map = trie.get(node);
+			childChars[node] = new char[map.size()];
+			children[node] = new int[map.size()];
+			int k = 0;
+			for (Map.Entry<Character, Integer> entry : map.entrySet()) {
+				childChars[node][k] = entry.getKey();
+				children[node][k++] = entry.getValue();
+			}
+		}
+		depth = depths.toArray();
+		output = outputs.toArray();
+		
+		// failure links, visiting the nodes in order of depth
+		fail = new int[n];
+		nextOutput = new int[n];
+		nextOutput[0] = -1;
+		IntList queue = new IntList(n);
+		queue.add(0);
+		for (int q = 0; q < queue.size(); q++) {
+			int node = queue.get(q);
+			for (int k = 0; k < children[node].length; k++) {
+				int child = children[node][k];
+				char c = childChars[node][k];
+				int f = -1;
+				if (node != 0) {
+					f = fail[node];
+					while (f != 0 && child(f, c) == -1) f = fail[f];
+					f = child(f, c);
+				}
+				fail[child] = f == -1 ? 0 : f;
+				nextOutput[child] = output[fail[child]] != -1 
+					? fail[child] : nextOutput[fail[child]];
+				queue.add(child);
+			}
+		}
+	}
+
+	/** Gets a node's child for a character.
+	 * @return the child; -1 if none
+	 */
+	private int child(int node, char c) {
+		char[] chars = childChars[node];
+		int n = chars.length;
+		if (n <= 8) {
+			for (int k = 0; k < n; k++) {
+				if (chars[k] == c) return children[node][k];
+			}
+			return -1;
+		}
+		int k = Arrays.binarySearch(chars, c);
+		return k >= 0 ? children[node][k] : -1;
+	}
+
+	private char fold(char c) {
+		return ignoreCase ? SearchPattern.fold(c) : c;
+	}
+
+	/** Replaces every occurrence of the sequences within a region.
+	 * @param text text to search
+	 * @param start start of the region
+	 * @param end end of the region, which occurrences may not cross
+	 * @param matches if not <code>null</code>, list to which to add the
+	 * starting index of each occurrence replaced
+	 * @return the region with appropriate replacements
+	 */
+	public String replace(CharSequence text, int start, int end, IntList matches) {
+		StringBuilder s = new StringBuilder(Math.max(end - start, 16));
+		int prev = start; // end of the last replacement
+		int node = 0;
+		// the best occurrence seen so far that hasn't been replaced yet
+		int bestStart = -1;
+		int bestEnd = -1;
+		int bestQuarry = -1;
+		int i = start;
+		while (i < end || bestStart != -1) {
+			if (i < end) {
+				char c = fold(text.charAt(i++));
+				int next;
+				while ((next = child(node, c)) == -1 && node != 0) node = fail[node];
+				node = next == -1 ? 0 : next;
+				
+				// check each sequence ending here, longest first
+				int out = output[node] != -1 ? node : nextOutput[node];
+				for (; out != -1; out = nextOutput[out]) {
+					int quarry = output[out];
+					int loc = i - depth[out];
+					if (bestStart != -1 && loc > bestStart) continue;
+					if (word && !isWordBounded(text, loc, i)) continue;
+					bestStart = loc;
+					bestEnd = i;
+					bestQuarry = quarry;
+				}
+				// wait while a longer occurrence could still start at or
+				// before the best one
+				if (bestStart == -1 || bestStart >= i - depth[node]) continue;
+			}
+			
+			// replace the best occurrence and resume just past it
+			s.append(text, prev, bestStart).append(replacements[bestQuarry]);
+			if (matches != null) matches.add(bestStart);
+			prev = i = bestEnd;
+			node = 0;
+			bestStart = -1;
+		}
+		s.append(text, prev, end);
+		return s.toString();
+	}
+
+	/** Checks that an occurrence stands apart from any letters and 
+	 * digits on either side.
+	 */
+	private static boolean isWordBounded(CharSequence text, int start, int end) {
+		return (start == 0 || !SearchPattern.isWordChar(text.charAt(start - 1)))
+			&& (end == text.length() || !SearchPattern.isWordChar(text.charAt(end)));
+	}
+}
@@ -0,0 +1,250 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.textflex.texttrix;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/** Replace-all for large regions, searching chunks of the region on
+    several threads at once.
+    Each chunk collects the occurrences that start within it, reading
+    past its end as needed so that an occurrence straddling the
+    boundary belongs to the chunk in which it starts.  Since
+    replacements never overlap, an occurrence replaced near the end of
+    one chunk can rule out the first few occurrences found in the next.
+    The merge step therefore resumes the search just past the last
+    accepted occurrence until it meets an occurrence that the next
+    chunk also found, from which point the two searches agree.  The
+    result is the same set of occurrences that a single forward pass
+    would replace, ready to become the replace-all's edits.
+*/
+public class ParallelReplace {
+	/** Default for the smallest region replaced in parallel. */
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 1 << 22;
+	// smallest chunk worth handing to another thread
+	private static final int MIN_CHUNK = 1 << 16;
+	// smallest piece to search between progress reports
+	private static final int PROGRESS_PIECE = 1 << 20;
+	private static volatile int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+	/** Sets the smallest region to search in parallel.
+	 * @param threshold number of characters at or above which regions
+	 * are split up and searched on several threads;
+	 * <code>Integer.MAX_VALUE</code> always searches on the calling thread
+	 */
+	public static void setParallelThreshold(int threshold) {
+		parallelThreshold = Math.max(threshold, MIN_CHUNK);
+	}
+
+	/** Gets the smallest region to search in parallel.
+	 * @return number of characters at or above which regions are
+	 * searched on several threads
+	 */
+	public static int getParallelThreshold() {
+		return parallelThreshold;
+	}
+
+	/** Checks whether a region is large enough to search in parallel.
+	 * @param length number of characters in the region
+	 * @return true if the region should be split up
+	 */
+	public static boolean isParallel(int length) {
+		return length >= parallelThreshold
+			&& Runtime.getRuntime().availableProcessors() > 1;
+	}
+
+	/** Finds the occurrences that a replace-all would replace, searching
+	 * chunks of the region in parallel.
+	 * @param text text to search; must not change during the search
+	 * @param pattern compiled sequence to find
+	 * @param word if true, only find the sequence as a separate word
+	 * @param start index to start searching
+	 * @param end end of the region, which occurrences may not cross
+	 * @return starting indices of the non-overlapping occurrences, 
+	 * in ascending order
+	 */
+	public static IntList findAll(
+		CharSequence text,
+		SearchPattern pattern,
+		boolean word,
+		int start,
+		int end) {
+		int m = pattern.length();
+		// occurrences must lie wholly within the region
+		int last = end - m + 1;
+		IntList matches = new IntList();
+		if (m == 0 || start >= last) return matches;
+		
+		// aim for a few chunks per thread to even out the load
+		int threads = Runtime.getRuntime().availableProcessors();
+		int chunk = Math.max(MIN_CHUNK, (last - start) / (threads * 4));
+		List<ChunkTask> tasks = new ArrayList<ChunkTask>();
+		for (int i = start; i < last; i += chunk) {
+			ChunkTask task = new ChunkTask(
+				text, pattern, word, i, Math.min(i + chunk, last));
+			task.fork();
+			tasks.add(task);
+		}
+		
+		// the index just past the last accepted occurrence
+		int pos = start;
+		for (int i = 0; i < tasks.size(); i++) {
+			ChunkTask task = tasks.get(i);
+			IntList found = task.join();
+			int from = 0;
+			// an occurrence accepted from the previous chunk may overlap 
+			// the first of this chunk's; search again from just past it
+			// until meeting an occurrence that this chunk also found
+			while (from < found.size() && found.get(from) < pos) {
+				int loc = find(text, pattern, word, pos, task.end);
+				if (loc == -1) {
+					from = found.size();
+				} else if ((from = found.binarySearch(loc)) < 0) {
+					matches.add(loc);
+					pos = loc + m;
+					from = -from - 1;
+				}
+			}
+			matches.addAll(found, from);
+			if (matches.size() > 0) {
+				pos = Math.max(pos, matches.get(matches.size() - 1) + m);
+			}
+		}
+		return matches;
+	}
+
+	/** Finds the occurrences that a replace-all would replace, searching
+	 * the region piece by piece, and reporting progress and stopping if
+	 * canceled after each piece.
+	 * Each piece is searched in parallel if large enough.
+	 * @param text text to search; must not change during the search
+	 * @param pattern compiled sequence to find
+	 * @param word if true, only find the sequence as a separate word
+	 * @param start index to start searching
+	 * @param end end of the region, which occurrences may not cross
+	 * @param progress progress to report to
+	 * @return starting indices of the non-overlapping occurrences, 
+	 * in ascending order
+	 * @throws CancellationException if canceled
+	 */
+	public static IntList findAll(
+		CharSequence text,
+		SearchPattern pattern,
+		boolean word,
+		int start,
+		int end,
+		Progress progress) {
+		progress.begin(end - start);
+		int m = pattern.length();
+		int last = end - m + 1;
+		IntList matches = new IntList();
+		if (m == 0) return matches;
+		int piece = Math.max(PROGRESS_PIECE, parallelThreshold);
+		// each piece takes the occurrences starting within it, resuming 
+		// just past the last occurrence of the previous piece
+		int pos = start;
+		while (pos < last) {
+			int pieceEnd = (int) Math.min((long) pos + piece, last);
+			if (isParallel(pieceEnd - pos)) {
+				matches.addAll(findAll(text, pattern, word, pos, pieceEnd + m - 1), 0);
+			} else {
+				int loc = pos;
+				while ((loc = find(text, pattern, word, loc, pieceEnd)) != -1) {
+					matches.add(loc);
+					loc += m;
+				}
+			}
+			pos = pieceEnd;
+			if (matches.size() > 0) {
+				pos = Math.max(pos, matches.get(matches.size() - 1) + m);
+			}
+			progress.setDone(pos - start);
+			progress.checkCanceled();
+		}
+		return matches;
+	}
+
+	/** Finds the next occurrence starting within a range.
+	 */
+	private static int find(
+		CharSequence text,
+		SearchPattern pattern,
+		boolean word,
+		int start,
+		int end) {
+		return word 
+			? pattern.indexOfWord(text, start, end) 
+			: pattern.indexOf(text, start, end);
+	}
+
+	/** Collects the non-overlapping occurrences that start within one 
+	 * chunk, as a forward pass from the chunk's start would find them.
+	 */
+	private static class ChunkTask extends RecursiveTask<IntList> {
+		private static final long serialVersionUID = 1L;
+
+		private CharSequence text = null;
+		private SearchPattern pattern = null;
+		private boolean word = false;
+		private int start = 0;
+		private int end = 0; // first index at which an occurrence may not start
+
+		ChunkTask(
+			CharSequence text, 
+			SearchPattern pattern, 
+			boolean word, 
+			int start, 
+			int end) {
+			this.text = text;
+			this.pattern = pattern;
+			this.word = word;
+			this.start = start;
+			this.end = end;
+		}
+
+		protected IntList compute() {
+			IntList found = new IntList();
+			int m = pattern.length();
+			int loc = start;
+			while ((loc = find(text, pattern, word, loc, end)) != -1) {
+				found.add(loc);
+				loc += m;
+			}
+			return found;
+		}
+	}
+}
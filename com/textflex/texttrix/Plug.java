@@ -38,6 +38,8 @@ package com.textflex.texttrix;
 
 import javax.swing.*;
 import javax.swing.event.*;
+import javax.swing.text.*;
+import javax.management.*;
 import java.io.*;
 import java.awt.*;
 import java.awt.event.*;
@@ -63,6 +65,35 @@ public class Plug extends PlugInWindow {
 	// which causes TextTrix to lauch the plug-in's single runPlugIn() command
 	private boolean invokeReplace = false;
 	private boolean stats = false;
+	// occurrences found by earlier searches, for "Find Next"
+	private MatchCache matchCache = new MatchCache();
+	// occurrences of the queries just typed, to narrow as the user types
+	private IncrementalSearch incremental = new IncrementalSearch();
+	// does the searching itself, apart from the dialog
+	private SearchEngine engine = new SearchEngine(matchCache, incremental);
+	// live statistics for the document being edited, if the host provides it
+	private IncrementalStats docStats = null;
+	// whether the stats labels currently show whole-document statistics
+	private boolean liveStats = false;
+	// runs replace-alls and statistics on large regions in the background
+	private SearchWorker worker = new SearchWorker();
+	// runs searches and replacements in files, which have nothing to do
+	// with the document and so outlive new requests on it
+	private SearchWorker fileWorker = new SearchWorker();
+	private Action cancelAction = null; // stops the background searches
+	private Document doc = null; // the document followed, to apply results to
+	// incremented with each edit to the followed document
+	private int docVersion = 0;
+	// fewest replacements to allow making one by one in the document
+	// rather than swapping in the replaced region; each posts its own
+	// event, though all are undone together, while swapping copies the
+	// whole region into a new string, the document, and the undo
+	// history, so the larger the document, the more edits are still
+	// cheaper than the copies, and a few hundred words replaced in a 
+	// huge file are always made in place
+	private static final int IN_PLACE_EDITS = 4096;
+	// characters of document that allow one more replacement in place
+	private static final int CHARS_PER_IN_PLACE_EDIT = 4096;
 
 	/** Creates the search plug-in.
 	Sets <code>ignoreSelection</code> to <code>false</code> so that
@@ -158,6 +189,55 @@ public class Plug extends PlugInWindow {
 			'S',
 			KeyStroke.getKeyStroke("alt S"));
 
+		// Runs the search tool in "find" mode once the user pauses while
+		// typing in the "Find" box, highlighting the next occurrence
+		// of the query so far;
+		// regular expressions are skipped, since they rarely make sense
+		// until finished, as are keystrokes during a background search,
+		// which only a deliberate request should cancel
+		Action findTypedAction = new AbstractAction("Find as you type", null) {
+			public void actionPerformed(ActionEvent e) {
+				if (diag.getFindText().length() == 0
+					|| diag.getRegex()
+					|| worker.isRunning()) {
+					return;
+				}
+				setAllRuns(false);
+				runPlugIn();
+			}
+		};
+
+		// Stops the searches running in the background, whether on the
+		// document or in files;
+		// creates a shortcut key (alt-C) as an alternative way to invoke
+		// the button
+		cancelAction = new AbstractAction("Cancel", null) {
+			public void actionPerformed(ActionEvent e) {
+				// each report reflects whether its search actually stopped
+				// before changing anything
+				if (worker.isRunning()) {
+					worker.cancel();
+					diag.setResultsLbl("Results: Canceled, and nothing changed");
+				}
+				if (fileWorker.isRunning()) {
+					if (fileWorker.cancel()) {
+						diag.setFilesLbl("Files: Canceled, and nothing changed");
+					} else {
+						// already moving the rewritten file into place;
+						// its result follows when done
+						diag.setFilesLbl("Files: Too late to cancel, "
+							+ "finishing the changes");
+					}
+				}
+			}
+		};
+		LibTTx.setAcceleratedAction(
+			cancelAction,
+			"Stops the searches in progress",
+			'C',
+			KeyStroke.getKeyStroke("alt C"));
+		cancelAction.setEnabled(false);
+
 		// Creates the options dialog window
 		diag =
 			new FindDialog(
@@ -165,8 +245,40 @@ public class Plug extends PlugInWindow {
 				replaceEnter,
 				findAction,
 				replaceAction,
-				statsAction);
+				statsAction,
+				cancelAction,
+				findTypedAction);
 		setWindow(diag);
+		
+		// shows the progress of background searches on the document in
+		// the results label, and of those in files in the files label,
+		// so that neither overwrites the other
+		worker.addChangeListener(new ChangeListener() {
+			public void stateChanged(ChangeEvent e) {
+				updateCancel();
+				SearchWorker.Job<?> job = worker.getCurrent();
+				if (job != null) {
+					diag.setResultsLbl("Results: " + describeProgress(job));
+				}
+			}
+		});
+		fileWorker.addChangeListener(new ChangeListener() {
+			public void stateChanged(ChangeEvent e) {
+				updateCancel();
+				SearchWorker.Job<?> job = fileWorker.getCurrent();
+				if (job != null) {
+					diag.setFilesLbl("Files: " + describeProgress(job));
+				}
+			}
+		});
+		
+		// lets JMX consoles watch how many searches run and how long
+		// they take
+		try {
+			engine.getMetrics().register();
+		} catch (JMException e) {
+			// only for watching; searches run the same without it
+		}
 		//setPanel(diag);
 	}
 
@@ -180,6 +292,78 @@ public class Plug extends PlugInWindow {
 		stats = b;
 	}
 
+	/** Follows the edits to a document so that its statistics stay
+	 * current without recounting the whole document.
+	 * Once the user has asked for statistics on the whole document,
+	 * the stats labels update with each edit.  The host should call
+	 * this method with the document of the currently selected tab
+	 * whenever the selection changes.
+	 * @param doc the document to follow; <code>null</code> to stop 
+	 * following any document
+	 */
+	public void trackDocument(Document doc) {
+		// results from the background are for the previous document
+		worker.cancel();
+		if (docStats != null) {
+			docStats.detach();
+			docStats = null;
+		}
+		liveStats = false;
+		this.doc = doc;
+		docVersion++;
+		if (doc == null) return;
+		docStats = new IncrementalStats(doc);
+		docStats.addChangeListener(new ChangeListener() {
+			public void stateChanged(ChangeEvent e) {
+				docVersion++;
+				// cached occurrences are for the document before the edit
+				matchCache.clear();
+				incremental.clear();
+				if (liveStats) {
+					diag.setStatsLbls(docStats.getStats());
+					// the word counts aren't kept live
+					diag.setWordFrequencyLbls(null);
+				}
+			}
+		});
+		docStats.attach();
+	}
+
+	/** Gets the cache of occurrences found by earlier searches.
+	 * The host can adjust its memory limit or clear it.
+	 * @return the cache
+	 */
+	public MatchCache getMatchCache() {
+		return matchCache;
+	}
+
+	/** Gets the engine that does the searching, apart from the dialog.
+	 * The host can run its own queries through it, on any thread, 
+	 * sharing the cache of occurrences with the dialog's searches.
+	 * @return the engine
+	 */
+	public SearchEngine getEngine() {
+		return engine;
+	}
+
+	/** Gets the worker that runs searches on large regions in the 
+	 * background.  The host can adjust the size of region at which
+	 * searches move to the background.
+	 * @return the worker
+	 */
+	public SearchWorker getWorker() {
+		return worker;
+	}
+
+	/** Gets the worker that runs searches and replacements in files.
+	 * New requests on the document leave its jobs running, so the host
+	 * can cancel them on its own, as when closing.
+	 * @return the worker
+	 */
+	public SearchWorker getFileWorker() {
+		return fileWorker;
+	}
+
 	/** Gets the normal icon.
 	@return normal icon
 	*/
@@ -241,176 +425,106 @@ public class Plug extends PlugInWindow {
 	@return the modified text and positions to highlight
 	*/
 	public PlugInOutcome run(String s, int x, int y) {
-		// the critical variable to keep in default setting to prevent
-		// TextTrix from highlighting when there's nothing to highlight
-		int selectionStart = -1;
-		int selectionEnd = -1;
-		// the string to return; s should be the entire body of text
-		String newstr = s;
-		// flags whether to employ the find function
-		boolean find = false;
-		String selectedText = "";
+		// a new request replaces any still running in the background
+		worker.cancel();
 		
 		// reset results and stats labels
 		diag.setResultsLbl("");
 		diag.resetStatsLbls();
+		liveStats = false;
 		
 		// cycle tips label
 		diag.setTipsLbl(1);
 		
-		//System.out.println("selected text: " + s.substring(x, y));
+		// the options as they stand now, so that the engine never reads
+		// the dialog while it searches; the dialog keeps them compiled 
+		// until the user changes them
+		CompiledQuery compiled = diag.getCompiledQuery();
+		SearchQuery query = compiled.getQuery();
+		SearchResult result = null;
 		// Acts according to whether the plug-in is set to the 
-		// "find" or "replace" modes;
-		// only replace if text to replace is already highlighted or
-		// replace-all option chosen
+		// "find", "replace", or "stats" modes;
+		// the engine only replaces if the text to replace is already 
+		// highlighted or the replace-all option is chosen, and otherwise
+		// defaults to find mode to highlight the quarry
 		if (stats) { // "stats" mode
-			// Assume only working from caret position or start of selected 
-			// sectiononward
-			int start = x;
-			int end = s.length();
-			
-			// Passes only selected text if flagged to do so
-			if (diag.getSelection()) { // highlighted text only
-				//System.out.println("start: " + x + ", end: " + y);
-				selectionStart = start = x;
-				selectionEnd = end = y;
-			} else if (diag.getWrap()) {
-				// entire text
-				start = 0;
+			int[] region = SearchEngine.getStatsRegion(s, x, y, query);
+			// for the whole document, takes the statistics from the live
+			// counts when available
+			TextStats textStats = null;
+			if (docStats != null && region[0] == 0 && region[1] == s.length()
+				&& (textStats = docStats.getStats()).getChars() == s.length()) {
+				liveStats = true;
+				// the word counts aren't kept live, so are tallied now, or
+				// for a large document, filled in once tallied in the 
+				// background
+				if (isBackground(s, 0, s.length())) {
+					result = query.getSelection()
+						? SearchResult.stats(textStats, x, y)
+						: SearchResult.stats(textStats, -1, -1);
+					submitWords(s, x, y, query, textStats);
+				} else {
+					result = engine.stats(s, x, y, query, textStats, null);
+				}
+			} else if (isBackground(s, region[0], region[1])) {
+				// the labels fill in once the count is done
+				submit(s, x, y, compiled);
+				return new PlugInOutcome(s, -1, -1, true);
+			} else {
+				result = engine.stats(s, x, y, query, null);
 			}
-			
-			// gathers the statistics
-			//System.out.println("charCount: " + charCount(start, end));
-			diag.setStatsLbls(
-				charCount(start, end) + "", 
-				wordCount(s, start, end) + "", 
-				lineCount(s, start, end) + "");
-			
-		} else if (invokeReplace 
-			&& !diag.getReplaceAll()
-			&& x != y
-			&& ((selectedText = s.substring(x, y)).equalsIgnoreCase(diag.getFindTextConverted())
-					&& diag.getIgnoreCase())
-				|| selectedText.equals(diag.getFindTextConverted())) {
-			// replaces single instance of quarry, only if already highlighted;
-			// otherwise, defaults to find mode to highlight the quarry
-			String replacementText = diag.getReplaceTextConverted();
-			String[] results = new String[] {
-				"Replaced " + selectedText + " with " 
-					+ replacementText + " once.",
-				"Boys and girls, Mr. " + replacementText 
-					+ " will be your substitute teacher today.",
-				selectedText + ", you're fired!",
-				replacementText + ", you're hired!"
-			};
-			displayResults(results, 4);
-			// Sets the cursor after the changed text to prevent
-			// the text from being found again if it contains the searched
-			// text
-			return new PlugInOutcome(
-				replacementText, 
-				x + replacementText.length(), // selection start
-				x + replacementText.length(), // seleection end
-				x, // replacement start
-				y); // replacement end
-			//newstr = s.substring(0, x) + diag.getReplaceTextConverted() + s.substring(y);
-			
-		} else if (invokeReplace && diag.getReplaceAll()) {
-			// Replace mode, replace-all
-			
-			// Check the area in which to replace every instance of
-			// the quarry; 
-			// by default, replace only within the selected section
-			if (diag.getWrap()) {
-				// replaces every instance throughout the entire
-				// body of text
-				x = 0;
-				y = s.length();
-			} else if (!diag.getSelection()) { 
-				// replace within highlighted text only
-				y = s.length();
+		} else if (invokeReplace) {
+			if (query.getReplaceAll()) {
+				int[] region = SearchEngine.getReplaceAllRegion(s, x, y, query);
+				if (isBackground(s, region[0], region[1])) {
+					// the document changes once the replacements are done
+					submit(s, x, y, compiled);
+					return new PlugInOutcome(s, -1, -1, true);
+				}
 			}
-			
-			// replace the quarry in the given section of text
-			newstr =
-				replace(
-					s,
-					diag.getFindTextConverted(),
-					diag.getReplaceTextConverted(),
-					x,
-					y,
-					diag.getWord(),
-					diag.getIgnoreCase());
-					
-			return new PlugInOutcome(
-				newstr, 
-				x + newstr.length(), // selection start
-				x + newstr.length(), // seleection end
-				x, // replacement start
-				y); // replacement end
+			result = engine.replace(s, x, y, compiled);
 		} else {
-			// defaults to Find mode
-			find = true;
+			result = engine.find(s, x, y, compiled);
 		}
-		
-		// Find mode
-		if (find) {
-			String findText = diag.getFindTextConverted();
-			// as in "replace" mode, "find" mode confines its search to 
-			// highlighted text only if the Selection option is checked;
-			// if not, "find" starts searching from the start of any 
-			// highlighted portion unless it already equals the text to find,
-			// often the case when the user scans through repeated words;
-			// instead, the function advances its start position by one character
-			if (diag.getSelection()) {
-				// check within the selected text only
-				selectionStart =
-					find(
-						s,
-						findText,
-						x,
-						y,
-						diag.getWord(),
-						diag.getIgnoreCase());
-						
-			} else {
-				// check from the cursor or the start of selected region, or one
-				// char past the start if the region already highlights the text,
-				// to find the quarry
-				
-				// advance start by one char if the selected region already
-				// highlights the quarry
-				String selection = s.substring(x, y);
-				if (selection.equals(findText)
-					|| diag.getIgnoreCase() && selection.equalsIgnoreCase(findText)) x++;
-				
-				// find the quarry
-				selectionStart =
-					find(s, findText, x, diag.getWord(), diag.getIgnoreCase());
-				// wrap if sequence not yet found and Wrap option
-				// checked
-				if (selectionStart == -1 && diag.getWrap()) {
-					selectionStart =
-						find(
-							s,
-							findText,
-							0,
-							diag.getWord(),
-							diag.getIgnoreCase());
-				}
-			}
-			// determines the ending position to highlight if the
-			// sequence has been found
-			if (selectionStart != -1)
-				selectionEnd = selectionStart + findText.length();
+		displayResults(result);
+		return getOutcome(s, result);
+	}
+	
+	/** Turns a result into the outcome for the host.
+	 * Replacements hand back only the new text for the replaced region,
+	 * with the caret after it to prevent the text from being found again
+	 * if it contains the searched text; "find" and "stats" modes won't
+	 * alter the text.
+	 * A replace-all that makes few enough replacements in the followed 
+	 * document is made there in place, so that a huge document is 
+	 * never copied to change a handful of words, and the outcome only
+	 * moves the caret.
+	 * @param s the entire text
+	 * @param result what the engine found or changed
+	 * @return the modified text and positions to highlight
+	 */
+	private PlugInOutcome getOutcome(String s, SearchResult result) {
+		if (isInPlace(result, s.length()) && doc != null && holdsText(doc, s)
+			&& applyEdit(doc, result)) {
+			return new PlugInOutcome(
+				s,
+				result.getSelectionStart(),
+				result.getSelectionEnd(),
+				true);
+		}
+		if (result.getText() != null) {
+			return new PlugInOutcome(
+				result.getText(), 
+				result.getSelectionStart(),
+				result.getSelectionEnd(),
+				result.getReplaceStart(),
+				result.getReplaceEnd());
 		}
-		boolean noTextChange = s.equals(newstr);
-		// "find" and "stats" mode won't alter the text
 		return new PlugInOutcome(
-			newstr,
-			selectionStart,
-			selectionEnd,
-			noTextChange);
+			s,
+			result.getSelectionStart(),
+			result.getSelectionEnd(),
+			true);
 	}
 	
 	/**Summarizes the results from the find, find/replace, or statistics call.
@@ -424,34 +538,55 @@ public class Plug extends PlugInWindow {
 		diag.setResultsLbl("Results: " + LibTTx.pickWeightedStr(results, weightFront));
 	}
 	
+	/** Summarizes a result from the engine, once the request is done,
+	 * in the results label or, for statistics, in the stats labels.
+	 * @param result what the engine found or changed
+	 */
+	private void displayResults(SearchResult result) {
+		if (result.getKind() == SearchResult.STATS) {
+			diag.setResultsLbl("");
+			diag.setStatsLbls(result.getStats());
+			if (result.getApproximateStats() != null) {
+				diag.setEstimateLbls(result.getApproximateStats());
+			} else {
+				diag.setWordFrequencyLbls(result.getWordFrequency());
+			}
+		} else {
+			displayResults(SearchSummary.describe(result), 4);
+		}
+	}
+	
 	/**Find a the first occurrence of a given sequence in a string.
 	 * @param text string to search
 	 * @param quarry sequence to find
 	 * @param start index to start searching
+	 * @param end index at which an occurrence may no longer start
 	 * @return index of the sequence's start in the string; -1 if not found
 	 */
 	public int findSeq(String text, String quarry, int start, int end) {
-		int loc = -1;
-		if (start < text.length()) {
-			loc = text.indexOf(quarry, start);
-			if (loc < end && loc != -1) {
-				String[] results = new String[] {
-					"Found " + quarry + ".",
-					"Eureka!  I found " + quarry + ".",
-					"Caught " + quarry + " red-handed, police officer.",
-					"Dr. " + quarry + "-stone, I presume?"
-				};
-				displayResults(results, 4);
-				return loc;
-			}
-		}
-		String[] results = new String[] {
-			"Sorry, I couldn't find " + quarry + " here.",
-			quarry + " has escaped!",
-			"Sir, all I'm picking up is static!"
-		};
-		displayResults(results, 4);
-		return -1;
+		return findSeq(text, quarry, start, end, false);
+	}
+	
+	/**Find a the first occurrence of a given sequence in a string,
+	 * optionally ignoring upper/lower case.
+	 * The text is compared in place rather than lowercased first.
+	 * Like the other find and replace helpers, leaves the results label
+	 * alone, so that calling it in a loop costs nothing beyond the 
+	 * search; {@link #getEngine()} gives results to summarize instead.
+	 * @param text string to search
+	 * @param quarry sequence to find
+	 * @param start index to start searching
+	 * @param end index at which an occurrence may no longer start
+	 * @param ignoreCase if true, ignore upper/lower case
+	 * @return index of the sequence's start in the string; -1 if not found
+	 */
+	public int findSeq(
+		String text, 
+		String quarry, 
+		int start, 
+		int end, 
+		boolean ignoreCase) {
+		return engine.indexOf(text, quarry, start, end, false, ignoreCase);
 	}
 
 	/**Front-end to the <code>find</code> methods with the assumption that the search
@@ -495,53 +630,180 @@ public class Plug extends PlugInWindow {
 		int end,
 		boolean word,
 		boolean ignoreCase) {
-		// if ignoring the distinction between upper/lower case, pass both "quarry"
-		// and the entire text as lower case
-		if (ignoreCase) {
-			text = text.toLowerCase();
-			quarry = quarry.toLowerCase();
-		}
-		// if only searching for whole words, use findWord(); otherwise, use findSeq()
+		// if only searching for whole words, use findWord(); otherwise, use findSeq();
+		// both compare upper/lower case in place rather than lowercasing
+		// the entire text
 		return word
-			? findWord(text, quarry, start, end)
-			: findSeq(text, quarry, start, end);
+			? findWord(text, quarry, start, end, ignoreCase)
+			: findSeq(text, quarry, start, end, ignoreCase);
+	}
+
+	/**Finds every occurrence of a given sequence in a region in one pass.
+	 * Overlapping occurrences are all included, so that stepping 
+	 * through the list visits the same places as pressing "Find" 
+	 * repeatedly.
+	 * @param text string to search
+	 * @param quarry sequence to find
+	 * @param start index to start searching
+	 * @param end index at which an occurrence may no longer start
+	 * @param word if true, treat the sequence as a separate word, with only
+	 * non-letters/non-digits surrounding it
+	 * @param ignoreCase if true, ignore upper/lower case
+	 * @return starting indices of the occurrences, in ascending order
+	 * @see #nextMatch(IntList, int, boolean)
+	 * @see #previousMatch(IntList, int, boolean)
+	 */
+	public IntList findAll(
+		String text,
+		String quarry,
+		int start,
+		int end,
+		boolean word,
+		boolean ignoreCase) {
+		return engine.findAll(text, quarry, start, end, word, ignoreCase);
+	}
+
+	/**Finds every occurrence of the sequence in the "Find" box, 
+	 * according to the dialog's options.
+	 * Searches only the selected region if "Selected area only" is
+	 * checked, or otherwise the entire text.
+	 * @param text string to search
+	 * @param x start of the selected region
+	 * @param y end of the selected region, non-inclusive
+	 * @return starting indices of the occurrences, in ascending order
+	 */
+	public IntList findAll(String text, int x, int y) {
+		boolean selection = diag.getSelection();
+		return findAll(
+			text,
+			diag.getFindTextConverted(),
+			selection ? x : 0,
+			selection ? y : text.length(),
+			diag.getWord(),
+			diag.getIgnoreCase());
+	}
+
+	/** Finds the sequence in the "find" box in every file under a
+	 * directory, with the dialog's word and case options, in the
+	 * background.  Progress, counted in files, shows in the dialog's
+	 * files label along with the final tally.  The search runs apart from searches
+	 * on the document, so new requests on the document leave it
+	 * running, though "Cancel" stops it along with them.
+	 * @param dir directory to search
+	 * @param listener receives each occurrence as it is found; called
+	 * from the searching threads rather than the event dispatch thread
+	 */
+	public void findInFiles(final File dir, final FileSearch.Listener listener) {
+		final String quarry = diag.getFindTextConverted();
+		final FileSearch search =
+			new FileSearch(quarry, diag.getWord(), diag.getIgnoreCase());
+		fileWorker.submit(new SearchWorker.Job<Integer>("Searching " + dir.getName()) {
+			protected Integer call(Progress progress) throws IOException {
+				return search.search(dir.toPath(), listener, progress);
+			}
+
+			protected void done(Integer count) {
+				diag.setFilesLbl("Files: Found " + quarry + " " + count
+					+ " times under " + dir.getName());
+			}
+
+			protected void failed(Throwable t) {
+				diag.setFilesLbl("Files: " + describeFailure(t));
+			}
+		});
+	}
+
+	/** Replaces every occurrence of the sequence in the "find" box
+	 * throughout a file, without loading the file into memory, so that
+	 * even files larger than the heap can be processed.
+	 * Runs in the background with the dialog's word and case options,
+	 * showing progress and then the number of replacements in the
+	 * files label.  The file is only changed once every replacement
+	 * has been made, and not at all if the search is canceled before
+	 * the rewritten file starts moving into place.
+	 * Like {@link #findInFiles}, it runs apart from searches on the
+	 * document, so it replaces any search in files still running.
+	 * @param file the file to rewrite, in UTF-8
+	 */
+	public void replaceInFile(final File file) {
+		final String quarry = diag.getFindTextConverted();
+		final StreamingReplace replace = new StreamingReplace(
+			quarry,
+			diag.getReplaceTextConverted(),
+			diag.getWord(),
+			diag.getIgnoreCase());
+		fileWorker.submit(new SearchWorker.Job<Long>("Replacing " + quarry) {
+			protected Long call(Progress progress) throws IOException {
+				return replace.replace(file.toPath(), progress);
+			}
+
+			protected void done(Long count) {
+				diag.setFilesLbl("Files: Replaced " + quarry + " " + count
+					+ " times in " + file.getName());
+			}
+
+			protected void failed(Throwable t) {
+				diag.setFilesLbl("Files: " + describeFailure(t));
+			}
+		});
+	}
+
+	/**Gets the first occurrence at or after a given position.
+	 * @param matches starting indices of the occurrences, in ascending
+	 * order
+	 * @param pos index from which to look
+	 * @param wrap if true, wrap around to the first occurrence when none
+	 * lies at or after <code>pos</code>
+	 * @return the occurrence's starting index; -1 if none
+	 */
+	public int nextMatch(IntList matches, int pos, boolean wrap) {
+		return SearchEngine.nextMatch(matches, pos, wrap);
+	}
+
+	/**Gets the last occurrence before a given position.
+	 * @param matches starting indices of the occurrences, in ascending
+	 * order
+	 * @param pos index before which to look
+	 * @param wrap if true, wrap around to the last occurrence when none
+	 * lies before <code>pos</code>
+	 * @return the occurrence's starting index; -1 if none
+	 */
+	public int previousMatch(IntList matches, int pos, boolean wrap) {
+		return SearchEngine.previousMatch(matches, pos, wrap);
 	}
 
 	/**Find a given expression as a separate word.
 	 * Searches through text to find the given expression so long 
 	 * as it is surrounded by non-letter, non-digit characters, such 
-	 * as spaces, dashes, or quotation marks.
+	 * as spaces, dashes, or quotation marks, or by the ends of the text.
 	 * @param text text to search
 	 * @param quarry word to find; can contain letter and/or numbers
 	 * @param start index at which to start searching
 	 * @return int starting index of matching expression; -1 if not found
 	 */
 	public int findWord(String text, String quarry, int start, int finish) {
-		// compare the word with the quarry to see if they match
-		//	    System.out.println("n: " + n + ", end: " + end);
-		String word = "";
-		while (start < finish
-			&& !(word = LibTTx.getWord(text, start, finish)).equals("")) {
-			if (word.equals(quarry)) {
-				String[] results = new String[] {
-					"Found the word" + quarry + ".",
-					"Eureka!  I found " + quarry + ".",
-					"Caught " + quarry + " red-handed, police officer.",
-					"Dr. " + quarry + "stone, I presume?"
-				};
-				displayResults(results, 4);
-				return text.indexOf(quarry, start);
-			} else {
-				start = text.indexOf(word, start) + word.length();
-			}
-		}
-		String[] results = new String[] {
-			"Sorry, I couldn't find " + quarry + " here.  Is it part of another word?",
-			quarry + " has escaped!",
-			"Sir, all I'm picking up is static!"
-		};
-		displayResults(results, 4);
-		return -1;
+		return findWord(text, quarry, start, finish, false);
+	}
+
+	/**Find a given expression as a separate word, optionally ignoring 
+	 * upper/lower case.
+	 * @param text text to search
+	 * @param quarry word to find; can contain letter and/or numbers
+	 * @param start index at which to start searching
+	 * @param ignoreCase if true, ignore upper/lower case
+	 * @return int starting index of matching expression; -1 if not found
+	 * @see #findWord(String, String, int, int)
+	 */
+	public int findWord(
+		String text, 
+		String quarry, 
+		int start, 
+		int finish, 
+		boolean ignoreCase) {
+		// find each occurrence of the quarry and check that it stands apart
+		// from the letters and digits around it, rather than breaking the
+		// text into words and comparing each one
+		return engine.indexOf(text, quarry, start, finish, true, ignoreCase);
 	}
 
 
@@ -568,88 +830,245 @@ public class Plug extends PlugInWindow {
 		int end,
 		boolean word,
 		boolean ignoreCase) {
-		
-		//System.out.println("x: " + start + ", y: " + end);
-		
-		StringBuffer s = new StringBuffer(text.length());
-		int n = start;
-		int prev = n;
-		
-		// append unmodified the text preceding the caret
-//		s.append(text.substring(0, n));
-		
-		// continue until the reaching text's end or the quarry has
-		// not been found
-		int count = 0;
-		while (n < end && n != -1) {
-			n = find(text, quarry, n, word, ignoreCase);
+		// confined to the given region, as if it were selected
+		SearchQuery query = new SearchQuery(
+			quarry, replacement, word, ignoreCase, false, true, true, false);
+		return engine.replaceAll(text, start, end, query, null).getText();
+	}
+
+	/** Checks whether to work on a region in the background.
+	 * Only large regions are worth it, and only when following the
+	 * document that holds the text, since the results are applied to
+	 * the document directly rather than returned to the host.
+	 * @param s the entire text
+	 * @param start start of the region
+	 * @param end end of the region
+	 * @return true if the region should be worked on in the background
+	 */
+	private boolean isBackground(String s, int start, int end) {
+		return doc != null && doc.getLength() == s.length() 
+			&& worker.isBackground(end - start);
+	}
+
+	/** Starts gathering statistics or a replace-all in the background,
+	 * filling in the stats labels or applying the replacements to the 
+	 * document once done.
+	 * @param s the entire text
+	 * @param x start of the selected region, or the caret
+	 * @param y end of the selected region, non-inclusive
+	 * @param compiled the options at the time of the request
+	 */
+	private void submit(
+		final String s,
+		final int x,
+		final int y,
+		final CompiledQuery compiled) {
+		final SearchQuery query = compiled.getQuery();
+		final boolean count = stats;
+		final Document target = doc;
+		final int version = docVersion;
+		String description = 
+			count ? "Counting" : "Replacing " + query.getQuarry();
+		worker.submit(new SearchWorker.Job<SearchResult>(description) {
+			protected SearchResult call(Progress progress) {
+				return count
+					? engine.stats(s, x, y, query, progress)
+					: engine.replaceAll(s, x, y, compiled, progress);
+			}
 			
-			// replace the quarry if found and starts within the
-			// given region
-			if (n != -1) {
-				// found within the region;
-				// append text at least up to the word
-				if (n + quarry.length() <= end) {
-					s.append(text.substring(prev, n) + replacement);
-					count++;
-					
-					// advance the find position just past the found quarry
-					n += quarry.length();
-					prev = n;
-				} else {
-					n += quarry.length();
+			protected void done(SearchResult result) {
+				if (isUnchanged(target, version) 
+					&& (!result.isTextChanged() || applyEdit(target, result))) {
+					displayResults(result);
 				}
-				
-				/* else {
-					// found, but not replaced b/c doesn't start
-					// within the region; 
-					// apend the quarry, too
-					s.append(text.substring(prev, n + quarry.length()));
-				}*/
-				
-				
-			}/* else {
-				// if not found, append the rest of the text unmodified
-				s.append(text.substring(prev, end));
-				text = s.toString();
-			}*/
+			}
 			
-//			if (n != -1 && n < end) prev = n;
-		}
-		
-		if (prev < end) {
-			// if not found or found beyond the search region, 
-			// append the rest of the text unmodified
-			s.append(text.substring(prev, end));
-		}
-		text = s.toString();
-		
-		/*
-		// append the rest of the text if a quarry occurrence extended 
-		// beyond the search boundary
-		if (n != -1) {
-			s.append(text.substring(n));
-			text = s.toString();
+			protected void failed(Throwable t) {
+				displayFailure(t);
+			}
+		});
+	}
+
+	/** Tallies the words of the entire document in the background,
+	 * filling in the word frequency labels once done, while the other
+	 * stats labels already show the live counts.
+	 * @param s the entire text
+	 * @param x start of the selected region, or the caret
+	 * @param y end of the selected region, non-inclusive
+	 * @param query the options at the time of the request
+	 * @param textStats the live counts for the entire text
+	 */
+	private void submitWords(
+		final String s, 
+		final int x,
+		final int y,
+		final SearchQuery query,
+		final TextStats textStats) {
+		final Document target = doc;
+		final int version = docVersion;
+		worker.submit(new SearchWorker.Job<SearchResult>("Counting words") {
+			protected SearchResult call(Progress progress) {
+				return engine.stats(s, x, y, query, textStats, progress);
+			}
+			
+			protected void done(SearchResult result) {
+				if (isUnchanged(target, version)) {
+					displayResults(result);
+				}
+			}
+			
+			protected void failed(Throwable t) {
+				displayFailure(t);
+			}
+		});
+	}
+
+	/** Checks that the document hasn't changed since a background search
+	 * started, saying so if it has.
+	 * @param target document that held the searched text
+	 * @param version the document's version when the search started
+	 * @return true if the document is unchanged
+	 */
+	private boolean isUnchanged(Document target, int version) {
+		if (target == doc && version == docVersion) return true;
+		diag.setResultsLbl(
+			"Results: The document changed during the search; try again?");
+		return false;
+	}
+
+	/** Checks whether to make a result's replacements one by one in
+	 * the document rather than swapping in the replaced region.
+	 * @param result the result
+	 * @param length length of the document
+	 * @return true if the result lists few enough edits for the 
+	 * document's size
+	 */
+	private static boolean isInPlace(SearchResult result, int length) {
+		EditList edits = result.getEdits();
+		return edits != null && edits.size() 
+			<= Math.max(IN_PLACE_EDITS, length / CHARS_PER_IN_PLACE_EDIT);
+	}
+
+	/** Checks that a document still holds the text that was searched,
+	 * as a document of the same length after an edit, or another tab's
+	 * document, would not.
+	 * The document's text is compared where it lies, a run at a time,
+	 * rather than copied out.
+	 * @param target the document
+	 * @param s the text searched
+	 * @return true if the document holds exactly the text
+	 */
+	private static boolean holdsText(Document target, String s) {
+		int n = s.length();
+		if (target.getLength() != n) return false;
+		Segment segment = new Segment();
+		segment.setPartialReturn(true);
+		try {
+			int pos = 0;
+			while (pos < n) {
+				target.getText(pos, n - pos, segment);
+				char[] chars = segment.array;
+				for (int i = 0, j = segment.offset; i < segment.count; i++, j++) {
+					if (chars[j] != s.charAt(pos + i)) return false;
+				}
+				pos += segment.count;
+			}
+		} catch (BadLocationException e) {
+			return false;
 		}
-		*/
-		
-		String[] results = null;
-		if (count > 10) {
-			results = new String[] {
-				"Replaced " + quarry + " " + count + " times.",
-				"Mmm mm!  That felt good.  Gobbled up " + count 
-					+ " " + quarry + "\'s.",
-				"Whew!  " + count + " occurances of " + quarry + ", all replaced"
-			};
-		} else {
-			results = new String[] {
-				"Replaced " + quarry + " " + count + " times.",
-				count + " replacements, and I'm still hungry.  Got anymore?",
-				"Goodbye, " + quarry + " (" + count + "x)"
-			};
+		return true;
+	}
+
+	/** Applies replacements to the document, making a few replacements
+	 * in place, or otherwise replacing the region with its new text as 
+	 * a single edit.
+	 * @param target document that held the searched text, unchanged
+	 * since
+	 * @param result the replacements
+	 * @return true if applied
+	 */
+	private boolean applyEdit(Document target, SearchResult result) {
+		int start = result.getReplaceStart();
+		int end = result.getReplaceEnd();
+		try {
+			if (isInPlace(result, target.getLength())) {
+				result.getEdits().applyTo(target);
+			} else if (target instanceof AbstractDocument) {
+				((AbstractDocument) target).replace(
+					start, end - start, result.getText(), null);
+			} else {
+				target.remove(start, end - start);
+				target.insertString(start, result.getText(), null);
+			}
+			return true;
+		} catch (BadLocationException e) {
+			displayFailure(e);
+			return false;
 		}
-		displayResults(results, 4);
-		return text;
+	}
+
+	/** Reports a background search that went wrong.
+	 * @param t what went wrong
+	 */
+	private void displayFailure(Throwable t) {
+		diag.setResultsLbl("Results: " + describeFailure(t));
+	}
+
+	/** Describes a background search that went wrong.
+	 * @param t what went wrong
+	 * @return the description
+	 */
+	private static String describeFailure(Throwable t) {
+		return "Oops, the search failed: " 
+			+ (t.getMessage() != null ? t.getMessage() : t.toString());
+	}
+
+	/** Describes how far a background search has got.
+	 * @param job the search
+	 * @return the description
+	 */
+	private static String describeProgress(SearchWorker.Job<?> job) {
+		return job.getDescription() + "... " 
+			+ job.getProgress().getPercent() + "%";
+	}
+
+	/** Enables "Cancel" only while a background search is running.
+	 */
+	private void updateCancel() {
+		cancelAction.setEnabled(worker.isRunning() || fileWorker.isRunning());
+	}
+
+	/** Finds and replaces all occurrences of several sequences, each with
+	 * its own replacement, in a single pass over the given region.
+	 * Where occurrences overlap, the one starting first wins, and of
+	 * those starting together, the longest; the text after it is then
+	 * searched afresh, so that replacements never overlap.
+	 * Runs much faster than calling 
+	 * {@link #replace(String, String, String, int, int, boolean, boolean)}
+	 * for each pair in turn, which would scan and copy the text once per
+	 * pair, and unlike it never replaces text that an earlier pair 
+	 * inserted.
+	 * @param text string to search
+	 * @param quarries sequences to find; empty sequences are ignored
+	 * @param replacements the replacement for each sequence
+	 * @param start index to start searching
+	 * @param end index at which the region ends, which occurrences 
+	 * may not cross
+	 * @param word treat the quarries as separate words, with only 
+	 * non-letters/non-digits surrounding them
+	 * @param ignoreCase ignore upper/lower case
+	 * @return the region with appropriate replacements
+	 */
+	public String replace(
+		String text,
+		String[] quarries,
+		String[] replacements,
+		int start,
+		int end,
+		boolean word,
+		boolean ignoreCase) {
+		return engine.replaceAll(
+			text, quarries, replacements, start, end, word, ignoreCase).getText();
 	}
 
 	/** Counts the number of characters betwen two indices, including the first but not
@@ -673,20 +1092,36 @@ public class Plug extends PlugInWindow {
 	 * @return number of whole words
 	 */
 	public int wordCount(String s, int start, int end) {
-		int n = 0;
-		String word = "";
-		// ensures that the word does not start after "end" and is not empty;
-		// no need to check that getWord() has not skipped over non-word characters and 
-		// found a word beyond "end" since getWord() returns "" if the word 
-		//characters start after the "end"
-		while (start < end && !(word = LibTTx.getWord(s, start, end)).equals("")) {
-			start = s.indexOf(word, start) + word.length();
-			n++;
-		}
-		return n;
+		// counts the starts of letter/digit runs rather than extracting
+		// each word
+		return TextStats.scan(s, start, end).getWords();
+	}
+
+	/** Estimates the distinct and most frequent words, for text too 
+	 * large to tally every distinct word exactly.
+	 * The estimates take a fixed amount of memory however large the 
+	 * text, and report their own error bounds.
+	 * 
+	 * @param s text to search
+	 * @param start starting index
+	 * @param end ending index, non-inclusive
+	 * @param ignoreCase if true, count words differing only in upper and
+	 * lower case as the same word
+	 * @return the estimates
+	 */
+	public ApproximateStats approximateWordStats(
+		String s, 
+		int start, 
+		int end, 
+		boolean ignoreCase) {
+		return ApproximateStats.scan(s, start, end, ignoreCase);
 	}
 
 	/** Counts the number of lines.
+	 * Use {@link TextStats#scan(CharSequence, int, int)} to count 
+	 * characters, words, and lines together in one pass.
+	 * The text's line starts are indexed once and reused until the text
+	 * changes, so that counting again only takes a binary search.
 	 * 
 	 * @param s text to search
 	 * @param start starting line
@@ -694,12 +1129,7 @@ public class Plug extends PlugInWindow {
 	 * @return number of lines
 	 */
 	public int lineCount(String s, int start, int end) {
-		int n = 1;
 		// must have at least one line, which does not terminate in a "\n"
-		while ((start = s.indexOf("\n", start)) >= 0 && start < end) {
-			start++;
-			n++;
-		}
-		return n;
+		return engine.getLineIndex(s).getLineCount(start, end);
 	}
 }
@@ -0,0 +1,135 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.textflex.texttrix;
+
+import java.util.concurrent.*;
+
+/** Progress of a long-running search, shared between the thread 
+    running it and the event dispatch thread displaying it.
+    The search reports how far it has got and checks now and then
+    whether it has been canceled, so that a canceled search stops
+    within a fraction of a second rather than running to the end.
+*/
+public class Progress {
+	// how often searches that call tick() report and check for cancellation
+	private static final int TICK_INTERVAL = 1 << 16;
+	
+	private volatile long total = 0; // amount of work to do
+	private volatile long done = 0; // amount of work done so far
+	private volatile boolean canceled = false;
+	private boolean committed = false; // guarded by this
+	private int ticks = 0; // only touched by the searching thread
+
+	/** Starts counting progress towards a given amount of work,
+	 * such as the number of characters to search.
+	 * @param total amount of work to do
+	 */
+	public void begin(long total) {
+		this.total = total;
+		done = 0;
+	}
+
+	/** Sets the amount of work done so far.
+	 * @param done amount of work done
+	 */
+	public void setDone(long done) {
+		this.done = done;
+	}
+
+	/** Counts one small unit of work, such as reading a character, 
+	 * every so often reporting the amount done so far and checking
+	 * for cancellation.  Lets loops report progress without paying
+	 * for it on each iteration.
+	 * @param done amount of work done so far
+	 * @throws CancellationException if the search has been canceled
+	 */
+	public void tick(long done) {
+		if (++ticks >= TICK_INTERVAL) {
+			ticks = 0;
+			this.done = done;
+			checkCanceled();
+		}
+	}
+
+	/** Gets the fraction of the work done so far.
+	 * @return percentage of the work done, from 0 to 100
+	 */
+	public int getPercent() {
+		long t = total;
+		return t <= 0 ? 0 : (int) Math.min(100, done * 100 / t);
+	}
+
+	/** Asks the search to stop, unless it has already committed to
+	 * changes that stopping can't undo.
+	 * @return true if the search will stop without having changed 
+	 * anything, or false if it has committed and will run to the end
+	 * @see #commit()
+	 */
+	public synchronized boolean cancel() {
+		if (committed) return false;
+		canceled = true;
+		return true;
+	}
+
+	/** Marks the point past which the search makes changes that can't
+	 * be taken back, such as moving a rewritten file into place.  From 
+	 * here on, cancel() leaves the search to finish.
+	 * @throws CancellationException if the search has already been 
+	 * canceled, in which case it must change nothing
+	 */
+	public synchronized void commit() {
+		checkCanceled();
+		committed = true;
+	}
+
+	/** Checks whether the search has been asked to stop.
+	 * @return true if canceled
+	 */
+	public boolean isCanceled() {
+		return canceled;
+	}
+
+	/** Stops the search if it has been canceled or its thread
+	 * interrupted.
+	 * @throws CancellationException if the search has been canceled
+	 */
+	public void checkCanceled() {
+		if (canceled || Thread.currentThread().isInterrupted()) {
+			throw new CancellationException();
+		}
+	}
+}
@@ -0,0 +1,327 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.textflex.texttrix;
+
+import java.util.*;
+import java.util.regex.*;
+
+/** Regular expression searching and replacing.
+    Compiled patterns are kept in a small cache keyed by the expression
+    and its options, so that pressing "Find" repeatedly or replacing
+    every match never compiles the same expression twice.  Expressions
+    without any special characters are better served by
+    {@link SearchPattern}, and {@link #isLiteral(String)} lets callers
+    send them there instead.
+
+    <p>Matches may look past the ends of the searched region, so that
+    "Whole word only" and line anchors behave the same whether or not
+    the search is confined to a selection.  Replacements may refer to
+    groups as <code>$1</code> or <code>${name}</code>, with a backslash
+    escaping the next character, as in <code>Matcher.appendReplacement</code>.
+*/
+public class RegexSearch {
+	/** Number of compiled patterns to keep. */
+	public static final int CACHE_SIZE = 16;
+	// characters with special meaning in an expression
+	private static final String SPECIAL_CHARS = "\\[](){}.*+?^$|";
+	// characters that are neither letters nor digits, to bound whole words
+	private static final String NON_WORD_BEFORE = "(?<![\\p{L}\\p{Nd}])";
+	private static final String NON_WORD_AFTER = "(?![\\p{L}\\p{Nd}])";
+
+	// compiled patterns, least recently used first
+	private static LinkedHashMap<String, Pattern> cache = 
+		new LinkedHashMap<String, Pattern>(CACHE_SIZE * 2, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+				return size() > CACHE_SIZE;
+			}
+		};
+
+	/** Checks whether an expression simply matches itself.
+	 * @param regex the expression
+	 * @return true if the expression has no special characters
+	 */
+	public static boolean isLiteral(String regex) {
+		for (int i = 0; i < regex.length(); i++) {
+			if (SPECIAL_CHARS.indexOf(regex.charAt(i)) != -1) return false;
+		}
+		return true;
+	}
+
+	/** Checks whether a replacement simply stands for itself, without 
+	 * any group references or escapes.
+	 * @param replacement the replacement
+	 * @return true if the replacement has no special characters
+	 */
+	public static boolean isLiteralReplacement(String replacement) {
+		return replacement.indexOf('$') == -1 && replacement.indexOf('\\') == -1;
+	}
+
+	/** Gets the compiled form of an expression, compiling it only if
+	 * not already cached.
+	 * Line anchors match at the start and end of every line.
+	 * @param regex the expression
+	 * @param word if true, only match where the expression is bounded by
+	 * non-letters/non-digits
+	 * @param ignoreCase if true, ignore upper/lower case
+	 * @return the compiled pattern
+	 * @throws PatternSyntaxException if the expression is invalid
+	 */
+	public static Pattern compile(String regex, boolean word, boolean ignoreCase) {
+		String key = (word ? 'w' : '-') + "" + (ignoreCase ? 'i' : '-') + regex;
+		synchronized (cache) {
+			Pattern pattern = cache.get(key);
+			if (pattern == null) {
+				int flags = Pattern.MULTILINE;
+				if (ignoreCase) flags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+				pattern = Pattern.compile(
+					word ? NON_WORD_BEFORE + "(?:" + regex + ")" + NON_WORD_AFTER : regex,
+					flags);
+				cache.put(key, pattern);
+			}
+			return pattern;
+		}
+	}
+
+	/** Creates a matcher confined to a region of the text, but able to
+	 * look beyond it for word boundaries and line anchors.
+	 */
+	private static Matcher matcher(Pattern pattern, CharSequence text, int start, int end) {
+		Matcher m = pattern.matcher(text);
+		m.region(start, end);
+		m.useTransparentBounds(true);
+		m.useAnchoringBounds(false);
+		return m;
+	}
+
+	/** Finds the first match within a region.
+	 * @param text text to search
+	 * @param pattern compiled expression
+	 * @param start index at which to start searching
+	 * @param end index at which to stop searching; matches may not cross it
+	 * @return the match's start and end indices; <code>null</code> if 
+	 * not found
+	 */
+	public static int[] find(CharSequence text, Pattern pattern, int start, int end) {
+		if (start > end) return null;
+		Matcher m = matcher(pattern, text, start, end);
+		return m.find() ? new int[] { m.start(), m.end() } : null;
+	}
+
+	/** Checks whether a region of text is exactly one match, as when a
+	 * previous search has highlighted it.
+	 * @param text text to check
+	 * @param pattern compiled expression
+	 * @param start start of the region
+	 * @param end end of the region
+	 * @return true if the expression matches the entire region
+	 */
+	public static boolean matches(CharSequence text, Pattern pattern, int start, int end) {
+		return matcher(pattern, text, start, end).matches();
+	}
+
+	/** Gets the replacement for a region of text that is exactly one 
+	 * match, filling in any group references.
+	 * @param text text holding the match
+	 * @param pattern compiled expression
+	 * @param replacement replacement, possibly with group references
+	 * @param start start of the match
+	 * @param end end of the match
+	 * @return the replacement for the match; <code>null</code> if the 
+	 * region is not a match
+	 * @throws IllegalArgumentException if the replacement refers to a 
+	 * group that doesn't exist
+	 */
+	public static String replacement(
+		CharSequence text, 
+		Pattern pattern, 
+		String replacement, 
+		int start, 
+		int end) {
+		Matcher m = matcher(pattern, text, start, end);
+		if (!m.matches()) return null;
+		StringBuilder s = new StringBuilder();
+		appendReplacement(s, m, replacement);
+		return s.toString();
+	}
+
+	/** Lists the edits that would replace every match within a region,
+	 * without building the region's new text.
+	 * @param text text to search
+	 * @param pattern compiled expression
+	 * @param replacement replacement, possibly with group references
+	 * @param start start of the region
+	 * @param end end of the region; matches may not cross it
+	 * @return an edit for each match, in order
+	 * @throws IllegalArgumentException if the replacement refers to a 
+	 * group that doesn't exist
+	 */
+	public static EditList edits(
+		CharSequence text,
+		Pattern pattern,
+		String replacement,
+		int start,
+		int end) {
+		EditList edits = new EditList();
+		Matcher m = matcher(pattern, text, start, end);
+		// a plain replacement is the same for every match, and the list
+		// stores it only once
+		boolean literal = isLiteralReplacement(replacement);
+		StringBuilder s = new StringBuilder();
+		while (m.find()) {
+			if (literal) {
+				edits.add(m.start(), m.end() - m.start(), replacement);
+			} else {
+				s.setLength(0);
+				appendReplacement(s, m, replacement);
+				edits.add(m.start(), m.end() - m.start(), s);
+			}
+		}
+		return edits;
+	}
+
+	/** Lists the edits that would replace every match within a region,
+	 * reporting progress as the expression reads through the text and
+	 * stopping if canceled.
+	 * @param text text to search
+	 * @param pattern compiled expression
+	 * @param replacement replacement, possibly with group references
+	 * @param start start of the region
+	 * @param end end of the region; matches may not cross it
+	 * @param progress progress to report to
+	 * @return an edit for each match, in order
+	 * @throws IllegalArgumentException if the replacement refers to a 
+	 * group that doesn't exist
+	 * @throws java.util.concurrent.CancellationException if canceled
+	 */
+	public static EditList edits(
+		CharSequence text,
+		Pattern pattern,
+		String replacement,
+		int start,
+		int end,
+		Progress progress) {
+		progress.begin(end - start);
+		return edits(
+			new ProgressText(text, start, progress), 
+			pattern, replacement, start, end);
+	}
+
+
+	/** Appends a replacement for the current match, filling in group 
+	 * references the way <code>Matcher.appendReplacement</code> does,
+	 * but without copying the text before the match.
+	 */
+	private static void appendReplacement(
+		StringBuilder s, 
+		Matcher m, 
+		String replacement) {
+		int n = replacement.length();
+		for (int i = 0; i < n; i++) {
+			char c = replacement.charAt(i);
+			if (c == '\\') {
+				// escapes the next character
+				if (++i == n) {
+					throw new IllegalArgumentException(
+						"Character to be escaped is missing");
+				}
+				s.append(replacement.charAt(i));
+			} else if (c != '$') {
+				s.append(c);
+			} else if (++i == n) {
+				throw new IllegalArgumentException("Illegal group reference: group index is missing");
+			} else if (replacement.charAt(i) == '{') {
+				// named group
+				int close = replacement.indexOf('}', i);
+				if (close == -1) {
+					throw new IllegalArgumentException("Named capturing group is missing trailing '}'");
+				}
+				String group = m.group(replacement.substring(i + 1, close));
+				if (group != null) s.append(group);
+				i = close;
+			} else {
+				// numbered group, taking as many digits as still name a group
+				int group = replacement.charAt(i) - '0';
+				if (group < 0 || group > 9) {
+					throw new IllegalArgumentException("Illegal group reference");
+				}
+				while (i + 1 < n) {
+					int digit = replacement.charAt(i + 1) - '0';
+					if (digit < 0 || digit > 9 || group * 10 + digit > m.groupCount()) break;
+					group = group * 10 + digit;
+					i++;
+				}
+				if (group > m.groupCount()) {
+					throw new IllegalArgumentException("No group " + group);
+				}
+				String text = m.group(group);
+				if (text != null) s.append(text);
+			}
+		}
+	}
+
+	/** Text that reports progress as it is read, so that a long match
+	 * can be canceled partway through.
+	 */
+	private static class ProgressText implements CharSequence {
+		private CharSequence text = null;
+		private int start = 0; // where the work begins
+		private Progress progress = null;
+
+		ProgressText(CharSequence text, int start, Progress progress) {
+			this.text = text;
+			this.start = start;
+			this.progress = progress;
+		}
+
+		public char charAt(int i) {
+			progress.tick(i - start);
+			return text.charAt(i);
+		}
+
+		public int length() {
+			return text.length();
+		}
+
+		public CharSequence subSequence(int start, int end) {
+			return text.subSequence(start, end);
+		}
+
+		public String toString() {
+			return text.toString();
+		}
+	}
+}
@@ -0,0 +1,768 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+import java.util.regex.*;
+
+/** Finds, replaces, and counts text according to a {@link SearchQuery},
+    returning a {@link SearchResult} rather than showing anything.
+    The engine never touches the dialog or any other Swing component,
+    so that it can run on any thread, and <code>Plug</code> merely 
+    captures the dialog's options in a query, hands it to the engine,
+    and turns the result into messages and highlighting.
+
+    <p>An engine is safe to share among threads.  The only state it
+    keeps is the cache of occurrences, which synchronizes itself, and
+    the most recently compiled sequence and replacement list, which 
+    never change once compiled.  A server that runs thousands of
+    searches at once can share a single engine, or give each thread 
+    its own.
+
+    <p>Each find, replace, and count is recorded in the engine's
+    {@link SearchMetrics}, which can be watched through JMX.  The lower
+    level methods, such as {@link #indexOf(String, String, int, int, 
+    boolean, boolean)}, are building blocks and go unrecorded.
+*/
+public class SearchEngine {
+	private MatchCache matchCache = null;
+	// narrows the occurrences of the query typed just before, if any
+	private IncrementalSearch incremental = null;
+	// the most recently compiled search sequence, kept for "Find Next"
+	private volatile SearchPattern pattern = null;
+	// the most recently compiled query, kept for "Find Next"
+	private volatile CompiledQuery compiled = null;
+	// the most recently compiled list of replacement pairs
+	private volatile MultiReplace multiReplace = null;
+	// line starts of the most recently numbered text
+	private volatile IndexedLines lines = null;
+	// counts and times the operations run through queries
+	private SearchMetrics metrics = new SearchMetrics();
+
+	/** Creates an engine with a cache of its own.
+	 */
+	public SearchEngine() {
+		this(new MatchCache(), null);
+	}
+
+	/** Creates an engine.
+	 * @param matchCache cache of occurrences to look up and fill
+	 * @param incremental history of the queries typed into the "Find"
+	 * box, to narrow as the user types; <code>null</code> to always 
+	 * search the whole text on a cache miss, which suits callers that
+	 * don't search as the user types
+	 */
+	public SearchEngine(MatchCache matchCache, IncrementalSearch incremental) {
+		this.matchCache = matchCache;
+		this.incremental = incremental;
+	}
+
+	/** Gets the cache of occurrences found by earlier searches.
+	 * @return the cache
+	 */
+	public MatchCache getMatchCache() {
+		return matchCache;
+	}
+
+	/** Gets the index of a text's line starts, indexing the text only 
+	 * if it has changed since the last call, as when the user presses
+	 * "Find" again on an unchanged document.
+	 * @param s the entire text
+	 * @return the text's line index
+	 */
+	public LineIndex getLineIndex(String s) {
+		IndexedLines last = lines;
+		if (last == null || (last.text != s && !last.text.equals(s))) {
+			last = new IndexedLines(s, new LineIndex(s));
+			lines = last;
+		}
+		return last.index;
+	}
+
+	/** Gets the counts and timings of the operations run so far.
+	 * @return the metrics, ready to register with JMX
+	 */
+	public SearchMetrics getMetrics() {
+		return metrics;
+	}
+
+	/** Compiles a query, or reuses the previous compilation if the 
+	 * query hasn't changed, as when the user repeatedly presses "Find".
+	 * @param query the query
+	 * @return the compiled query
+	 */
+	public CompiledQuery compile(SearchQuery query) {
+		CompiledQuery last = compiled;
+		if (last == null || !last.getQuery().equals(query)) {
+			last = new CompiledQuery(query);
+			compiled = last;
+		}
+		return last;
+	}
+
+	/** Checks whether a query needs the regular expression engine.
+	 * Even in "Regular expression" mode, an expression without special
+	 * characters takes the literal path, which is faster, unless the 
+	 * replacement refers to groups.
+	 * @param query the query
+	 * @param replace true if replacing rather than only finding
+	 * @return true if the search needs the regular expression engine
+	 */
+	public static boolean isRegex(SearchQuery query, boolean replace) {
+		if (!query.getRegex()) return false;
+		return !RegexSearch.isLiteral(query.getQuarry())
+			|| replace 
+				&& !RegexSearch.isLiteralReplacement(query.getReplacement());
+	}
+
+	/** Finds the next occurrence of the quarry.
+	 * Searches from the caret or the start of the selected region, 
+	 * unless the selection already holds an occurrence, as when the 
+	 * user scans through repeated words, in which case the search 
+	 * starts one character further along.  Only searches within the
+	 * selected region if the query says so, and wraps around to the
+	 * start of the text if the query says so and nothing is found.
+	 * @param s the entire text
+	 * @param x start of the selected region, or the caret
+	 * @param y end of the selected region, non-inclusive
+	 * @param query what to find
+	 * @return the occurrence found, if any
+	 */
+	public SearchResult find(String s, int x, int y, SearchQuery query) {
+		return find(s, x, y, compile(query));
+	}
+
+	/** Finds the next occurrence of a compiled quarry, as 
+	 * {@link #find(String, int, int, SearchQuery)} does.
+	 * @param s the entire text
+	 * @param x start of the selected region, or the caret
+	 * @param y end of the selected region, non-inclusive
+	 * @param compiled what to find
+	 * @return the occurrence found, if any
+	 */
+	public SearchResult find(String s, int x, int y, CompiledQuery compiled) {
+		SearchQuery query = compiled.getQuery();
+		long time = System.nanoTime();
+		SearchResult result = findNext(s, x, y, compiled);
+		metrics.recordFind(System.nanoTime() - time, 
+			query.getSelection() ? y - x : s.length(),
+			result.getKind() == SearchResult.FOUND);
+		return result;
+	}
+
+	private SearchResult findNext(
+		String s, 
+		int x, 
+		int y, 
+		CompiledQuery compiled) {
+		SearchQuery query = compiled.getQuery();
+		if (compiled.isRegex(false)) {
+			Pattern regex = null;
+			try {
+				regex = compiled.getRegex();
+			} catch (PatternSyntaxException e) {
+				return SearchResult.invalid(
+					SearchResult.BAD_PATTERN, query.getQuarry(), e.getDescription());
+			}
+			return findRegex(s, x, y, query, regex);
+		}
+		
+		String quarry = query.getQuarry();
+		boolean word = query.getWord();
+		boolean ignoreCase = query.getIgnoreCase();
+		// every occurrence in the document, looked up from the cache 
+		// when the user presses "Find" again on an unchanged document
+		IntList matches = 
+			getMatches(s, quarry, word, ignoreCase, compiled.getPattern());
+		int loc = -1;
+		if (query.getSelection()) {
+			// check within the selected text only
+			loc = nextMatch(matches, x, false);
+			if (loc >= y) loc = -1;
+		} else {
+			// advance start by one char if the selected region already
+			// highlights the quarry
+			if (y - x == quarry.length()
+				&& s.regionMatches(ignoreCase, x, quarry, 0, y - x)) x++;
+			loc = nextMatch(matches, x, query.getWrap());
+		}
+		if (loc == -1) return SearchResult.notFound(quarry, word);
+		LineIndex index = getLineIndex(s);
+		return SearchResult.found(quarry, word, loc, loc + quarry.length(),
+			matches.ceilingIndex(loc), matches.size(), 
+			index.getLine(loc), index.getColumn(loc));
+	}
+
+	/** Finds the next match of a regular expression, as 
+	 * {@link #find(String, int, int, SearchQuery)} does for sequences.
+	 */
+	private SearchResult findRegex(
+		String s, 
+		int x, 
+		int y, 
+		SearchQuery query, 
+		Pattern regex) {
+		int[] found = null;
+		if (query.getSelection()) {
+			// check within the selected text only
+			found = RegexSearch.find(s, regex, x, y);
+		} else {
+			// start one char past the highlighted region if it already 
+			// matches, as when the user scans through repeated matches
+			int start = x;
+			if (x != y && RegexSearch.matches(s, regex, x, y)) start++;
+			found = RegexSearch.find(s, regex, start, s.length());
+			// an empty match at the caret would be found again and again
+			if (found != null && found[0] == found[1] && found[0] == x && x == y) {
+				found = RegexSearch.find(s, regex, x + 1, s.length());
+			}
+			if (found == null && query.getWrap()) {
+				found = RegexSearch.find(s, regex, 0, s.length());
+			}
+		}
+		if (found == null) {
+			return SearchResult.notFound(query.getQuarry(), query.getWord());
+		}
+		LineIndex index = getLineIndex(s);
+		return SearchResult.found(
+			query.getQuarry(), query.getWord(), found[0], found[1], -1, 0,
+			index.getLine(found[0]), index.getColumn(found[0]));
+	}
+
+	/** Replaces the selected occurrence of the quarry, or with the
+	 * "Replace all" option, every occurrence in the region that 
+	 * {@link #getReplaceAllRegion(String, int, int, SearchQuery)} gives.
+	 * If the selection doesn't hold an occurrence, finds the next one
+	 * instead, so that running the replacement again replaces it.
+	 * @param s the entire text
+	 * @param x start of the selected region, or the caret
+	 * @param y end of the selected region, non-inclusive
+	 * @param query what to find and what to replace it with
+	 * @return the replacement made, or the occurrence found
+	 */
+	public SearchResult replace(String s, int x, int y, SearchQuery query) {
+		return replace(s, x, y, compile(query));
+	}
+
+	/** Replaces the selected occurrence of a compiled quarry, or every
+	 * occurrence, as {@link #replace(String, int, int, SearchQuery)} 
+	 * does.
+	 * @param s the entire text
+	 * @param x start of the selected region, or the caret
+	 * @param y end of the selected region, non-inclusive
+	 * @param compiled what to find and what to replace it with
+	 * @return the replacement made, or the occurrence found
+	 */
+	public SearchResult replace(String s, int x, int y, CompiledQuery compiled) {
+		if (compiled.getQuery().getReplaceAll()) {
+			return replaceAll(s, x, y, compiled, null);
+		}
+		long time = System.nanoTime();
+		SearchResult result = replaceSelection(s, x, y, compiled);
+		metrics.recordReplace(System.nanoTime() - time, 
+			result.getKind() == SearchResult.REPLACED ? y - x : s.length(), 
+			result.getKind() == SearchResult.REPLACED ? 1 : 0);
+		return result;
+	}
+
+	private SearchResult replaceSelection(
+		String s, 
+		int x, 
+		int y, 
+		CompiledQuery compiled) {
+		SearchQuery query = compiled.getQuery();
+		if (compiled.isRegex(true)) {
+			Pattern regex = null;
+			String replaced = null;
+			try {
+				regex = compiled.getRegex();
+				if (x != y) {
+					// fills in the highlighted match's groups
+					replaced = RegexSearch.replacement(
+						s, regex, query.getReplacement(), x, y);
+				}
+			} catch (PatternSyntaxException e) {
+				return SearchResult.invalid(
+					SearchResult.BAD_PATTERN, query.getQuarry(), e.getDescription());
+			} catch (IllegalArgumentException e) {
+				// the replacement refers to a missing group
+				return SearchResult.invalid(
+					SearchResult.BAD_REPLACEMENT, query.getQuarry(), e.getMessage());
+			}
+			if (replaced != null) {
+				return SearchResult.replaced(s.substring(x, y), replaced, x, y);
+			}
+			return findRegex(s, x, y, query, regex);
+		}
+		
+		// replaces single instance of quarry, only if already highlighted;
+		// otherwise, defaults to find mode to highlight the quarry
+		if (x != y) {
+			String selected = s.substring(x, y);
+			if (query.getIgnoreCase() 
+				? selected.equalsIgnoreCase(query.getQuarry())
+				: selected.equals(query.getQuarry())) {
+				return SearchResult.replaced(selected, query.getReplacement(), x, y);
+			}
+		}
+		return findNext(s, x, y, compiled);
+	}
+
+	/** Gets the region in which "Replace all" replaces: the entire text 
+	 * with the "Wrap" option; otherwise the selected region with the
+	 * "Selected area only" option; otherwise from the caret to the end.
+	 * @param s the entire text
+	 * @param x start of the selected region, or the caret
+	 * @param y end of the selected region, non-inclusive
+	 * @param query the options
+	 * @return the start and end of the region
+	 */
+	public static int[] getReplaceAllRegion(
+		String s, 
+		int x, 
+		int y, 
+		SearchQuery query) {
+		if (query.getWrap()) return new int[] { 0, s.length() };
+		if (query.getSelection()) return new int[] { x, y };
+		return new int[] { x, s.length() };
+	}
+
+	/** Replaces every occurrence of the quarry in the region that
+	 * {@link #getReplaceAllRegion(String, int, int, SearchQuery)} gives.
+	 * Large regions are searched in chunks on several threads, and the
+	 * new text is built with a single copy.
+	 * @param s the entire text
+	 * @param x start of the selected region, or the caret
+	 * @param y end of the selected region, non-inclusive
+	 * @param query what to find and what to replace it with
+	 * @param progress progress to report to, stopping if canceled;
+	 * <code>null</code> if not tracking progress
+	 * @return the replacements made
+	 * @throws java.util.concurrent.CancellationException if the 
+	 * progress is canceled
+	 */
+	public SearchResult replaceAll(
+		String s, 
+		int x, 
+		int y, 
+		SearchQuery query, 
+		Progress progress) {
+		return replaceAll(s, x, y, compile(query), progress);
+	}
+
+	/** Replaces every occurrence of a compiled quarry, as 
+	 * {@link #replaceAll(String, int, int, SearchQuery, Progress)} does.
+	 * @param s the entire text
+	 * @param x start of the selected region, or the caret
+	 * @param y end of the selected region, non-inclusive
+	 * @param compiled what to find and what to replace it with
+	 * @param progress progress to report to, stopping if canceled;
+	 * <code>null</code> if not tracking progress
+	 * @return the replacements made
+	 * @throws java.util.concurrent.CancellationException if the 
+	 * progress is canceled
+	 */
+	public SearchResult replaceAll(
+		String s, 
+		int x, 
+		int y, 
+		CompiledQuery compiled, 
+		Progress progress) {
+		long time = System.nanoTime();
+		int[] region = getReplaceAllRegion(s, x, y, compiled.getQuery());
+		SearchResult result = 
+			replaceRegion(s, region[0], region[1], compiled, progress);
+		metrics.recordReplace(System.nanoTime() - time, 
+			region[1] - region[0], result.getCount());
+		return result;
+	}
+
+	/** Replaces every occurrence of the quarry in a region.
+	 */
+	private SearchResult replaceRegion(
+		String s, 
+		int start, 
+		int end, 
+		CompiledQuery compiled, 
+		Progress progress) {
+		SearchQuery query = compiled.getQuery();
+		String quarry = query.getQuarry();
+		String replacement = query.getReplacement();
+		
+		if (compiled.isRegex(true)) {
+			EditList edits = null;
+			try {
+				Pattern regex = compiled.getRegex();
+				edits = progress == null
+					? RegexSearch.edits(s, regex, replacement, start, end)
+					: RegexSearch.edits(
+						s, regex, replacement, start, end, progress);
+			} catch (PatternSyntaxException e) {
+				return SearchResult.invalid(
+					SearchResult.BAD_PATTERN, quarry, e.getDescription());
+			} catch (IllegalArgumentException e) {
+				// the replacement refers to a missing group
+				return SearchResult.invalid(
+					SearchResult.BAD_REPLACEMENT, quarry, e.getMessage());
+			}
+			return SearchResult.replacedAll(quarry, s, edits, start, end);
+		}
+		
+		// the replacements come back as edits rather than as a new copy
+		// of the region, so that a few replacements in a huge text take
+		// only as much memory as the edits themselves
+		EditList edits = new EditList();
+		int m = quarry.length();
+		if (m > 0 && (progress != null || ParallelReplace.isParallel(end - start))) {
+			// large regions: search chunks of the region concurrently
+			SearchPattern pattern = compiled.getPattern();
+			IntList matches = progress == null
+				? ParallelReplace.findAll(s, pattern, query.getWord(), start, end)
+				: ParallelReplace.findAll(
+					s, pattern, query.getWord(), start, end, progress);
+			int count = matches.size();
+			for (int i = 0; i < count; i++) {
+				edits.add(matches.get(i), m, replacement);
+			}
+		} else if (m > 0) {
+			// a single forward pass, each search resuming just past the
+			// previous occurrence; an empty quarry would match everywhere
+			// without advancing
+			SearchPattern pattern = compiled.getPattern();
+			boolean word = query.getWord();
+			// occurrences must lie wholly within the region
+			int last = end - m + 1;
+			int n = start;
+			while (n < last) {
+				n = word 
+					? pattern.indexOfWord(s, n, last) 
+					: pattern.indexOf(s, n, last);
+				if (n == -1) break;
+				edits.add(n, m, replacement);
+				// advance the find position just past the found quarry
+				n += m;
+			}
+		}
+		return SearchResult.replacedAll(quarry, s, edits, start, end);
+	}
+
+	/** Replaces every occurrence of several sequences, each with its
+	 * own replacement, in a single pass over a region.
+	 * Where occurrences overlap, the one starting first wins, and of
+	 * those starting together, the longest.
+	 * @param s the entire text
+	 * @param quarries sequences to find; empty sequences are ignored
+	 * @param replacements the replacement for each sequence
+	 * @param start start of the region
+	 * @param end end of the region, which occurrences may not cross
+	 * @param word treat the quarries as separate words
+	 * @param ignoreCase ignore upper/lower case
+	 * @return the replacements made
+	 * @see MultiReplace
+	 */
+	public SearchResult replaceAll(
+		String s,
+		String[] quarries,
+		String[] replacements,
+		int start,
+		int end,
+		boolean word,
+		boolean ignoreCase) {
+		long time = System.nanoTime();
+		// cleanup jobs tend to apply the same list to many documents
+		MultiReplace compiled = multiReplace;
+		if (compiled == null 
+			|| !compiled.isCompiledFrom(quarries, replacements, word, ignoreCase)) {
+			compiled = new MultiReplace(quarries, replacements, word, ignoreCase);
+			multiReplace = compiled;
+		}
+		IntList matches = new IntList();
+		String text = compiled.replace(s, start, end, matches);
+		metrics.recordReplace(
+			System.nanoTime() - time, end - start, matches.size());
+		return SearchResult.replacedAll(
+			quarries.length, text, start, end, matches.size());
+	}
+
+	/** Gets the region for which to gather statistics: the selected
+	 * region with the "Selected area only" option; otherwise the entire
+	 * text with the "Wrap" option; otherwise from the caret to the end.
+	 * @param s the entire text
+	 * @param x start of the selected region, or the caret
+	 * @param y end of the selected region, non-inclusive
+	 * @param query the options
+	 * @return the start and end of the region
+	 */
+	public static int[] getStatsRegion(
+		String s, 
+		int x, 
+		int y, 
+		SearchQuery query) {
+		if (query.getSelection()) return new int[] { x, y };
+		if (query.getWrap()) return new int[] { 0, s.length() };
+		return new int[] { x, s.length() };
+	}
+
+	/** Gathers statistics for the region that 
+	 * {@link #getStatsRegion(String, int, int, SearchQuery)} gives,
+	 * keeping the selection highlighted if confined to it.
+	 * Words are also tallied, matching case unless the query ignores it.
+	 * @param s the entire text
+	 * @param x start of the selected region, or the caret
+	 * @param y end of the selected region, non-inclusive
+	 * @param query the options
+	 * @param progress progress to report to, stopping if canceled;
+	 * <code>null</code> if not tracking progress
+	 * @return the statistics
+	 * @throws java.util.concurrent.CancellationException if the 
+	 * progress is canceled
+	 */
+	public SearchResult stats(
+		String s, 
+		int x, 
+		int y, 
+		SearchQuery query, 
+		Progress progress) {
+		return stats(s, x, y, query, null, progress);
+	}
+
+	/** Gathers statistics as {@link #stats(String, int, int, 
+	 * SearchQuery, Progress)} does, but with the character, word, and 
+	 * line counts already known, as from live counts of the document.
+	 * Regions large enough for {@link ApproximateStats#isApproximate(int)}
+	 * have their distinct and most frequent words estimated rather than
+	 * tallied, so as to take a fixed amount of memory.
+	 * @param s the entire text
+	 * @param x start of the selected region, or the caret
+	 * @param y end of the selected region, non-inclusive
+	 * @param query the options
+	 * @param textStats the region's counts; <code>null</code> to gather
+	 * them
+	 * @param progress progress to report to, stopping if canceled;
+	 * <code>null</code> if not tracking progress
+	 * @return the statistics
+	 * @throws java.util.concurrent.CancellationException if the 
+	 * progress is canceled
+	 */
+	public SearchResult stats(
+		String s, 
+		int x, 
+		int y, 
+		SearchQuery query, 
+		TextStats textStats,
+		Progress progress) {
+		long time = System.nanoTime();
+		int[] region = getStatsRegion(s, x, y, query);
+		int start = region[0];
+		int end = region[1];
+		if (textStats == null) {
+			textStats = progress == null
+				? TextStats.scan(s, start, end)
+				: TextStats.scan(s, start, end, progress);
+		}
+		boolean ignoreCase = query.getIgnoreCase();
+		WordFrequency words = null;
+		ApproximateStats estimates = null;
+		if (ApproximateStats.isApproximate(end - start)) {
+			estimates = progress == null
+				? ApproximateStats.scan(s, start, end, ignoreCase)
+				: ApproximateStats.scan(s, start, end, ignoreCase, progress);
+		} else {
+			words = WordFrequency.count(s, start, end, ignoreCase, progress);
+		}
+		metrics.recordStats(System.nanoTime() - time, end - start);
+		int selectionStart = query.getSelection() ? x : -1;
+		int selectionEnd = query.getSelection() ? y : -1;
+		return estimates == null
+			? SearchResult.stats(textStats, words, selectionStart, selectionEnd)
+			: SearchResult.stats(
+				textStats, estimates, selectionStart, selectionEnd);
+	}
+
+	/** Gets every occurrence of a sequence in the entire text, from the
+	 * cache if the text and query haven't changed since the last search.
+	 * @param s the entire body of text
+	 * @param quarry sequence to find
+	 * @param word if true, treat the sequence as a separate word
+	 * @param ignoreCase if true, ignore upper/lower case
+	 * @return starting indices of the occurrences, in ascending order;
+	 * must not be modified
+	 */
+	public IntList getMatches(
+		String s, 
+		String quarry, 
+		boolean word, 
+		boolean ignoreCase) {
+		return getMatches(s, quarry, word, ignoreCase, null);
+	}
+
+	/** Gets every occurrence of a sequence in the entire text.
+	 * @param pattern the sequence already compiled; <code>null</code> to
+	 * compile it if needed
+	 */
+	private IntList getMatches(
+		String s, 
+		String quarry, 
+		boolean word, 
+		boolean ignoreCase,
+		SearchPattern pattern) {
+		IntList matches = matchCache.get(s, quarry, word, ignoreCase);
+		if (matches == null) {
+			// either way, the list comes trimmed before anyone else can
+			// see it, since the history and cache share it among threads
+			if (incremental != null) {
+				matches = incremental.find(s, quarry, word, ignoreCase);
+			} else {
+				if (pattern == null) pattern = getPattern(quarry, ignoreCase);
+				matches = new IntList();
+				pattern.findAll(s, 0, s.length(), word, matches);
+				matches.trimToSize();
+			}
+			matchCache.put(s, quarry, word, ignoreCase, matches);
+		}
+		return matches;
+	}
+
+	/** Finds every occurrence of a sequence in a region in one pass,
+	 * including occurrences that overlap one another.
+	 * @param text string to search
+	 * @param quarry sequence to find
+	 * @param start index to start searching
+	 * @param end index at which an occurrence may no longer start
+	 * @param word if true, treat the sequence as a separate word
+	 * @param ignoreCase if true, ignore upper/lower case
+	 * @return starting indices of the occurrences, in ascending order
+	 */
+	public IntList findAll(
+		String text,
+		String quarry,
+		int start,
+		int end,
+		boolean word,
+		boolean ignoreCase) {
+		IntList matches = new IntList();
+		getPattern(quarry, ignoreCase).findAll(text, start, end, word, matches);
+		return matches;
+	}
+
+	/** Finds the first occurrence of a sequence in a region.
+	 * @param text string to search
+	 * @param quarry sequence to find
+	 * @param start index to start searching
+	 * @param end index at which an occurrence may no longer start
+	 * @param word if true, treat the sequence as a separate word
+	 * @param ignoreCase if true, ignore upper/lower case
+	 * @return index of the occurrence; -1 if not found
+	 */
+	public int indexOf(
+		String text,
+		String quarry,
+		int start,
+		int end,
+		boolean word,
+		boolean ignoreCase) {
+		if (start >= text.length() || start >= end) return -1;
+		SearchPattern compiled = getPattern(quarry, ignoreCase);
+		return word 
+			? compiled.indexOfWord(text, start, end)
+			: compiled.indexOf(text, start, end);
+	}
+
+	/** Gets the compiled form of a search sequence.
+	 * Reuses the previous compilation if the sequence and case option
+	 * haven't changed, as when the user repeatedly presses "Find" for 
+	 * the same quarry.
+	 * @param quarry sequence to find
+	 * @param ignoreCase if true, ignore upper/lower case
+	 * @return the compiled sequence
+	 */
+	public SearchPattern getPattern(String quarry, boolean ignoreCase) {
+		SearchPattern compiled = pattern;
+		if (compiled == null 
+			|| compiled.getIgnoreCase() != ignoreCase
+			|| !compiled.getPattern().equals(quarry)) {
+			compiled = new SearchPattern(quarry, ignoreCase);
+			pattern = compiled;
+		}
+		return compiled;
+	}
+
+	/**Gets the first occurrence at or after a given position.
+	 * @param matches starting indices of the occurrences, in ascending
+	 * order
+	 * @param pos index from which to look
+	 * @param wrap if true, wrap around to the first occurrence when none
+	 * lies at or after <code>pos</code>
+	 * @return the occurrence's starting index; -1 if none
+	 */
+	public static int nextMatch(IntList matches, int pos, boolean wrap) {
+		int i = matches.ceilingIndex(pos);
+		if (i == matches.size()) {
+			i = wrap ? 0 : -1;
+		}
+		return i != -1 && i < matches.size() ? matches.get(i) : -1;
+	}
+
+	/**Gets the last occurrence before a given position.
+	 * @param matches starting indices of the occurrences, in ascending
+	 * order
+	 * @param pos index before which to look
+	 * @param wrap if true, wrap around to the last occurrence when none
+	 * lies before <code>pos</code>
+	 * @return the occurrence's starting index; -1 if none
+	 */
+	public static int previousMatch(IntList matches, int pos, boolean wrap) {
+		int i = matches.ceilingIndex(pos) - 1;
+		if (i < 0 && wrap) {
+			i = matches.size() - 1;
+		}
+		return i >= 0 ? matches.get(i) : -1;
+	}
+
+	/** A line index along with the text it indexes, so that the two are
+	 * always read together.
+	 */
+	private static class IndexedLines {
+		private final String text;
+		private final LineIndex index;
+
+		IndexedLines(String text, LineIndex index) {
+			this.text = text;
+			this.index = index;
+		}
+	}
+}
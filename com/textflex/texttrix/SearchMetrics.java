@@ -0,0 +1,200 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+import java.lang.management.*;
+import java.util.concurrent.atomic.*;
+import javax.management.*;
+
+/** Counts the searches, replacements, and statistics that a 
+    {@link SearchEngine} runs, how much text they cover, what they find,
+    and how long they take, for viewing through JMX.
+    Recording only increments a few atomic counters, without allocating
+    or locking, so that it adds next to nothing even to the quickest 
+    search, and any number of threads can record at once.
+*/
+public class SearchMetrics implements SearchMetricsMBean {
+	/** Name under which {@link #register()} makes the metrics 
+	 * available. */
+	public static final String OBJECT_NAME = 
+		"com.textflex.texttrix:type=SearchMetrics";
+
+	private final Operation find = new Operation();
+	private final Operation replace = new Operation();
+	private final Operation stats = new Operation();
+
+	/** Counters for one kind of operation, which the histogram of
+	 * latencies also counts.
+	 */
+	private static class Operation {
+		private final AtomicLong chars = new AtomicLong();
+		// occurrences found or replaced
+		private final AtomicLong items = new AtomicLong();
+		private final LatencyHistogram latency = new LatencyHistogram();
+
+		void record(long nanos, long chars, long items) {
+			this.chars.addAndGet(chars);
+			if (items != 0) this.items.addAndGet(items);
+			latency.record(nanos);
+		}
+
+		void reset() {
+			chars.set(0);
+			items.set(0);
+			latency.reset();
+		}
+	}
+
+	/** Records a search for the next occurrence.
+	 * @param nanos time the search took
+	 * @param chars characters of text covered
+	 * @param found true if an occurrence was found
+	 */
+	public void recordFind(long nanos, long chars, boolean found) {
+		find.record(nanos, chars, found ? 1 : 0);
+	}
+
+	/** Records a replace or replace-all.
+	 * @param nanos time the replacing took
+	 * @param chars characters of text covered
+	 * @param replacements number of occurrences replaced
+	 */
+	public void recordReplace(long nanos, long chars, long replacements) {
+		replace.record(nanos, chars, replacements);
+	}
+
+	/** Records gathering statistics.
+	 * @param nanos time the counting took
+	 * @param chars characters counted
+	 */
+	public void recordStats(long nanos, long chars) {
+		stats.record(nanos, chars, 0);
+	}
+
+	public long getFindCount() {
+		return find.latency.getCount();
+	}
+
+	public long getFindChars() {
+		return find.chars.get();
+	}
+
+	public long getFindMatches() {
+		return find.items.get();
+	}
+
+	public long getFindLatencyP50() {
+		return micros(find, 50);
+	}
+
+	public long getFindLatencyP99() {
+		return micros(find, 99);
+	}
+
+	public long getReplaceCount() {
+		return replace.latency.getCount();
+	}
+
+	public long getReplaceChars() {
+		return replace.chars.get();
+	}
+
+	public long getReplacements() {
+		return replace.items.get();
+	}
+
+	public long getReplaceLatencyP50() {
+		return micros(replace, 50);
+	}
+
+	public long getReplaceLatencyP99() {
+		return micros(replace, 99);
+	}
+
+	public long getStatsCount() {
+		return stats.latency.getCount();
+	}
+
+	public long getStatsChars() {
+		return stats.chars.get();
+	}
+
+	public long getStatsLatencyP50() {
+		return micros(stats, 50);
+	}
+
+	public long getStatsLatencyP99() {
+		return micros(stats, 99);
+	}
+
+	private static long micros(Operation operation, double percent) {
+		return operation.latency.getPercentile(percent) / 1000;
+	}
+
+	public void reset() {
+		find.reset();
+		replace.reset();
+		stats.reset();
+	}
+
+	/** Makes the metrics available through the platform's MBean server
+	 * under {@link #OBJECT_NAME}, in place of any metrics registered
+	 * there before, as from an earlier instance of the plug-in.
+	 * @throws JMException if the server refuses the metrics
+	 */
+	public void register() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(OBJECT_NAME);
+		if (server.isRegistered(name)) {
+			server.unregisterMBean(name);
+		}
+		server.registerMBean(this, name);
+	}
+
+	/** Withdraws the metrics from the platform's MBean server, if 
+	 * registered there.
+	 * @throws JMException if the server refuses
+	 */
+	public void unregister() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(OBJECT_NAME);
+		if (server.isRegistered(name)) {
+			server.unregisterMBean(name);
+		}
+	}
+}
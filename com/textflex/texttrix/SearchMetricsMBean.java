@@ -0,0 +1,105 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+/** The management interface for {@link SearchMetrics}, as JMX consoles
+    such as JConsole see it.
+    Sizes are in characters of text covered, and latencies in 
+    microseconds, measured from the request to the result.
+*/
+public interface SearchMetricsMBean {
+	/** Gets the number of searches for the next occurrence.
+	 * @return the number of searches */
+	long getFindCount();
+
+	/** Gets the characters of text covered by searches.
+	 * @return the number of characters */
+	long getFindChars();
+
+	/** Gets the number of searches that found an occurrence.
+	 * @return the number of matches */
+	long getFindMatches();
+
+	/** Gets the median time to find an occurrence.
+	 * @return microseconds */
+	long getFindLatencyP50();
+
+	/** Gets the time within which 99% of searches finished.
+	 * @return microseconds */
+	long getFindLatencyP99();
+
+	/** Gets the number of replace and replace-all operations.
+	 * @return the number of operations */
+	long getReplaceCount();
+
+	/** Gets the characters of text covered by replace operations.
+	 * @return the number of characters */
+	long getReplaceChars();
+
+	/** Gets the number of occurrences replaced.
+	 * @return the number of replacements */
+	long getReplacements();
+
+	/** Gets the median time to replace.
+	 * @return microseconds */
+	long getReplaceLatencyP50();
+
+	/** Gets the time within which 99% of replace operations finished.
+	 * @return microseconds */
+	long getReplaceLatencyP99();
+
+	/** Gets the number of times statistics were gathered.
+	 * @return the number of operations */
+	long getStatsCount();
+
+	/** Gets the characters of text counted for statistics.
+	 * @return the number of characters */
+	long getStatsChars();
+
+	/** Gets the median time to gather statistics.
+	 * @return microseconds */
+	long getStatsLatencyP50();
+
+	/** Gets the time within which 99% of statistics finished.
+	 * @return microseconds */
+	long getStatsLatencyP99();
+
+	/** Sets every count back to zero.
+	 */
+	void reset();
+}
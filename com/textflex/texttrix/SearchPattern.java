@@ -0,0 +1,401 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.textflex.texttrix;
+
+/** A search sequence compiled for repeated searching.
+    Compiling the sequence builds whatever tables the search
+    algorithm needs once, so that pressing "Find" again for the same
+    sequence only pays for the scan itself.  The algorithm is chosen
+    by the length of the sequence.  Long sequences use
+    Boyer-Moore-Horspool, which can skip ahead by up to the sequence's
+    length at a time and so looks at only a fraction of the text.
+    Short sequences gain little from skipping and use the Two-Way
+    algorithm, which never backs up in the text and so stays linear
+    even on highly repetitive documents.  When searching a plain
+    <code>String</code>, short sequences go through
+    <code>String.indexOf</code> instead, since the JVM compiles it to
+    vectorized instructions that beat any scan written in Java.
+
+    <p>A sequence compiled to ignore case stores its characters
+    case-folded and folds each text character as it compares it,
+    so the document itself is never copied or lowercased.  Folding
+    follows <code>String.equalsIgnoreCase</code>, with a fast path
+    for ASCII characters.  Short sequences starting with an ASCII
+    character first look for either case of that character, which
+    costs a couple of comparisons per text character rather than a
+    fold, and only compare the rest of the sequence where one turns up.
+*/
+public class SearchPattern {
+	/** Shortest sequence searched with Boyer-Moore-Horspool rather than
+	 * the Two-Way algorithm.
+	 */
+	public static final int LONG_PATTERN = 32;
+
+	private static final int TWO_WAY = 0;
+	private static final int HORSPOOL = 1;
+	private static final int SKIP_SIZE = 256; // must be a power of 2
+
+	private String pattern = ""; // the uncompiled sequence
+	private char[] pat = null; // the sequence's characters, folded if ignoring case
+	private boolean ignoreCase = false;
+	private int algorithm = TWO_WAY;
+	// Horspool shift for each character, keyed by its low bits
+	private int[] skip = null;
+	// Two-Way critical factorization position and period
+	private int crit = 0;
+	private int period = 0;
+	private boolean periodic = false;
+	// when ignoring case, the first character in upper case, if the
+	// first character is ASCII and so can be scanned for quickly
+	private char firstUpper = 0;
+	private boolean asciiFirst = false;
+
+	/** Compiles a search sequence that respects upper/lower case.
+	 * @param pattern sequence to find
+	 */
+	public SearchPattern(String pattern) {
+		this(pattern, false);
+	}
+
+	/** Compiles a search sequence.
+	 * @param pattern sequence to find
+	 * @param ignoreCase if true, ignore upper/lower case
+	 */
+	public SearchPattern(String pattern, boolean ignoreCase) {
+		this.pattern = pattern;
+		this.ignoreCase = ignoreCase;
+		pat = pattern.toCharArray();
+		if (ignoreCase) {
+			for (int i = 0; i < pat.length; i++) {
+				pat[i] = fold(pat[i]);
+			}
+		}
+		if (pat.length < LONG_PATTERN) {
+			algorithm = TWO_WAY;
+			buildCriticalFactorization();
+			if (ignoreCase && pat.length > 0 && pat[0] < 0x80) {
+				asciiFirst = true;
+				firstUpper = Character.toUpperCase(pat[0]);
+			}
+		} else {
+			algorithm = HORSPOOL;
+			buildSkipTable();
+		}
+	}
+
+	/** Gets the uncompiled sequence.
+	 * @return the sequence as given to the constructor
+	 */
+	public String getPattern() {
+		return pattern;
+	}
+
+	/** Gets whether the sequence ignores upper/lower case.
+	 * @return true if the sequence was compiled to ignore case
+	 */
+	public boolean getIgnoreCase() {
+		return ignoreCase;
+	}
+
+	/** Gets the number of characters in the sequence.
+	 * @return the sequence length
+	 */
+	public int length() {
+		return pat.length;
+	}
+
+	/** Finds the first occurrence of the sequence that starts within a
+	 * given region.  The occurrence may extend past the end of the
+	 * region, as with <code>String.indexOf</code> from the region's start.
+	 * @param text text to search
+	 * @param start index at which to start searching
+	 * @param end first index at which an occurrence may no longer start
+	 * @return index of the sequence's start in the text; -1 if not found
+	 */
+	public int indexOf(CharSequence text, int start, int end) {
+		if (start < 0) start = 0;
+		// the last position at which the whole sequence still fits
+		int last = Math.min(end - 1, text.length() - pat.length);
+		if (start > last) return -1;
+		if (algorithm == HORSPOOL) return horspool(text, start, last);
+		// String.indexOf can't stop at the region's end, so only use it
+		// when it would overrun by no more than the region itself
+		if (!ignoreCase && text instanceof String
+			&& text.length() - end <= end - start) {
+			int loc = ((String) text).indexOf(pattern, start);
+			return loc > last ? -1 : loc;
+		}
+		if (asciiFirst) return firstCharScan(text, start, last);
+		return twoWay(text, start, last);
+	}
+
+	/** Finds the first occurrence of the sequence that starts within a
+	 * given region and stands as a separate word, with only non-letters,
+	 * non-digits, or the ends of the text on either side.
+	 * Each occurrence found by {@link #indexOf(CharSequence, int, int)}
+	 * is simply checked at its two edges, so no words are extracted
+	 * from the text along the way.
+	 * @param text text to search
+	 * @param start index at which to start searching
+	 * @param end first index at which an occurrence may no longer start
+	 * @return index of the sequence's start in the text; -1 if not found
+	 */
+	public int indexOfWord(CharSequence text, int start, int end) {
+		if (pat.length == 0) return -1;
+		int loc = start;
+		while ((loc = indexOf(text, loc, end)) != -1) {
+			if (isWordAt(text, loc)) return loc;
+			loc++;
+		}
+		return -1;
+	}
+
+	/** Finds every occurrence of the sequence that starts within a given
+	 * region, including occurrences that overlap one another, in a
+	 * single pass.
+	 * @param text text to search
+	 * @param start index at which to start searching
+	 * @param end first index at which an occurrence may no longer start
+	 * @param word if true, only find the sequence as a separate word
+	 * @param matches list to which to add the occurrences' starting
+	 * indices, in ascending order
+	 * @return number of occurrences found
+	 */
+	public int findAll(
+		CharSequence text, 
+		int start, 
+		int end, 
+		boolean word, 
+		IntList matches) {
+		if (pat.length == 0) return 0;
+		int n = matches.size();
+		int loc = start;
+		while ((loc = word 
+				? indexOfWord(text, loc, end) 
+				: indexOf(text, loc, end)) != -1) {
+			matches.add(loc);
+			loc++;
+		}
+		return matches.size() - n;
+	}
+
+	/** Checks whether an occurrence stands as a separate word.
+	 * @param text text searched
+	 * @param loc index of the occurrence
+	 * @return true if neither neighbour is a letter or digit
+	 */
+	private boolean isWordAt(CharSequence text, int loc) {
+		int after = loc + pat.length;
+		return (loc == 0 || !isWordChar(text.charAt(loc - 1)))
+			&& (after == text.length() || !isWordChar(text.charAt(after)));
+	}
+
+	/** Checks whether a character can be part of a word, ie whether
+	 * it is a letter or digit.
+	 * @param c character to check
+	 * @return true if the character is a letter or digit
+	 */
+	public static boolean isWordChar(char c) {
+		if (c < 0x80) {
+			return c >= 'a' && c <= 'z' 
+				|| c >= 'A' && c <= 'Z' 
+				|| c >= '0' && c <= '9';
+		}
+		return Character.isLetterOrDigit(c);
+	}
+
+	/** Folds a character to a single case.
+	 * Two characters fold alike exactly when
+	 * <code>String.equalsIgnoreCase</code> would consider them equal.
+	 * @param c character to fold
+	 * @return the folded character
+	 */
+	public static char fold(char c) {
+		if (c < 0x80) {
+			return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+		}
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+
+	/** Gets a text character, folded if the sequence ignores case.
+	 * @param text text to search
+	 * @param i index of the character
+	 * @return the character, ready to compare with the sequence's characters
+	 */
+	private char charAt(CharSequence text, int i) {
+		char c = text.charAt(i);
+		return ignoreCase ? fold(c) : c;
+	}
+
+	/** Case-insensitive scan that looks for either case of the
+	 * sequence's first character, or any other character folding to it,
+	 * then compares the rest of the sequence there.
+	 */
+	private int firstCharScan(CharSequence text, int start, int last) {
+		int m = pat.length;
+		char first = pat[0];
+		for (int j = start; j <= last; j++) {
+			char c = text.charAt(j);
+			if (c == first || c == firstUpper || c >= 0x80 && fold(c) == first) {
+				int i = 1;
+				while (i < m && fold(text.charAt(j + i)) == pat[i]) i++;
+				if (i == m) return j;
+			}
+		}
+		return -1;
+	}
+
+	/** Builds the Horspool shift table.
+	 * Characters sharing the same low bits share a slot, which keeps the
+	 * table small; the smallest shift wins, so a collision can only
+	 * shorten a jump, never skip an occurrence.
+	 */
+	private void buildSkipTable() {
+		int m = pat.length;
+		skip = new int[SKIP_SIZE];
+		for (int i = 0; i < SKIP_SIZE; i++) {
+			skip[i] = m;
+		}
+		// later positions overwrite earlier ones with smaller shifts
+		for (int i = 0; i < m - 1; i++) {
+			skip[pat[i] & (SKIP_SIZE - 1)] = m - 1 - i;
+		}
+	}
+
+	/** Boyer-Moore-Horspool scan, comparing from the sequence's end and
+	 * shifting according to the text character under its last position.
+	 */
+	private int horspool(CharSequence text, int start, int last) {
+		int m1 = pat.length - 1;
+		char lastChar = pat[m1];
+		int j = start;
+		while (j <= last) {
+			char c = charAt(text, j + m1);
+			if (c == lastChar) {
+				int i = m1 - 1;
+				while (i >= 0 && charAt(text, j + i) == pat[i]) i--;
+				if (i < 0) return j;
+			}
+			j += skip[c & (SKIP_SIZE - 1)];
+		}
+		return -1;
+	}
+
+	/** Computes the critical factorization of the sequence for the
+	 * Two-Way algorithm from the larger of its maximal suffixes under
+	 * the normal and reversed character orderings.
+	 */
+	private void buildCriticalFactorization() {
+		int m = pat.length;
+		if (m == 0) return;
+		int[] fwd = maxSuffix(false);
+		int[] rev = maxSuffix(true);
+		if (rev[0] < fwd[0]) {
+			crit = fwd[0] + 1;
+			period = fwd[1];
+		} else {
+			crit = rev[0] + 1;
+			period = rev[1];
+		}
+		// the sequence is periodic if its left part recurs one period on
+		periodic = crit + period <= m;
+		for (int i = 0; periodic && i < crit; i++) {
+			if (pat[i] != pat[i + period]) periodic = false;
+		}
+		if (!periodic) {
+			period = Math.max(crit, m - crit) + 1;
+		}
+	}
+
+	/** Finds the maximal suffix of the sequence.
+	 * @param reverse true to use the reversed character ordering
+	 * @return the index just before the suffix, and the suffix's period
+	 */
+	private int[] maxSuffix(boolean reverse) {
+		int m = pat.length;
+		int ms = -1;
+		int j = 0;
+		int k = 1;
+		int p = 1;
+		while (j + k < m) {
+			char a = pat[j + k];
+			char b = pat[ms + k];
+			if (reverse ? a > b : a < b) {
+				j += k;
+				k = 1;
+				p = j - ms;
+			} else if (a == b) {
+				if (k != p) {
+					k++;
+				} else {
+					j += p;
+					k = 1;
+				}
+			} else {
+				ms = j++;
+				k = p = 1;
+			}
+		}
+		return new int[] { ms, p };
+	}
+
+	/** Two-Way scan, matching the right part of the factorization
+	 * forward and then the left part backward.  For periodic sequences,
+	 * remembers how much of the sequence already matched after shifting
+	 * by the period so that no text character is compared twice.
+	 */
+	private int twoWay(CharSequence text, int start, int last) {
+		int m = pat.length;
+		int memory = 0;
+		int j = start;
+		while (j <= last) {
+			int i = Math.max(crit, memory);
+			while (i < m && pat[i] == charAt(text, j + i)) i++;
+			if (i < m) {
+				j += i - crit + 1;
+				memory = 0;
+				continue;
+			}
+			i = crit - 1;
+			while (i >= memory && pat[i] == charAt(text, j + i)) i--;
+			if (i < memory) return j;
+			j += period;
+			memory = periodic ? m - period : 0;
+		}
+		return -1;
+	}
+}
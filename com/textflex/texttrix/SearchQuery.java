@@ -0,0 +1,177 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+/** The sequence to find, its replacement, and every option that shapes
+    a search, captured at one moment so that the search never reads the
+    dialog's fields and check boxes while it runs.
+    Queries cannot change once created, so the same query can be
+    handed to any number of threads, or kept to repeat a search later.
+*/
+public class SearchQuery {
+	private final String quarry;
+	private final String replacement;
+	private final boolean word;
+	private final boolean ignoreCase;
+	private final boolean wrap;
+	private final boolean selection;
+	private final boolean replaceAll;
+	private final boolean regex;
+
+	/** Creates a query for a sequence, searched for from the start 
+	 * position to the end of the text, without wrapping or replacing.
+	 * @param quarry sequence to find
+	 * @param word if true, only find the sequence as a separate word
+	 * @param ignoreCase if true, ignore upper/lower case
+	 */
+	public SearchQuery(String quarry, boolean word, boolean ignoreCase) {
+		this(quarry, "", word, ignoreCase, false, false, false, false);
+	}
+
+	/** Creates a query.
+	 * @param quarry sequence to find, with any escapes such as 
+	 * <code>^t</code> already converted; for a regular expression, the
+	 * expression as typed
+	 * @param replacement sequence with which to replace the quarry, with
+	 * any escapes already converted
+	 * @param word if true, only find the sequence as a separate word
+	 * @param ignoreCase if true, ignore upper/lower case
+	 * @param wrap if true, search the whole text, wrapping around to
+	 * its start
+	 * @param selection if true, search only within the selected region
+	 * @param replaceAll if true, replacing replaces every occurrence
+	 * rather than only the selected one
+	 * @param regex if true, the quarry is a regular expression
+	 */
+	public SearchQuery(
+		String quarry,
+		String replacement,
+		boolean word,
+		boolean ignoreCase,
+		boolean wrap,
+		boolean selection,
+		boolean replaceAll,
+		boolean regex) {
+		if (quarry == null || replacement == null) {
+			throw new NullPointerException("quarry and replacement required");
+		}
+		this.quarry = quarry;
+		this.replacement = replacement;
+		this.word = word;
+		this.ignoreCase = ignoreCase;
+		this.wrap = wrap;
+		this.selection = selection;
+		this.replaceAll = replaceAll;
+		this.regex = regex;
+	}
+
+	/** Gets the sequence to find.
+	 * @return the sequence, or the regular expression
+	 */
+	public String getQuarry() {
+		return quarry;
+	}
+
+	/** Gets the sequence with which to replace the quarry.
+	 * @return the replacement
+	 */
+	public String getReplacement() {
+		return replacement;
+	}
+
+	/** Gets the "Whole word only" option.
+	 * @return true if only finding the quarry as a separate word
+	 */
+	public boolean getWord() {
+		return word;
+	}
+
+	/** Gets the "Ignore case" option.
+	 * @return true if ignoring upper/lower case
+	 */
+	public boolean getIgnoreCase() {
+		return ignoreCase;
+	}
+
+	/** Gets the "Wrap" option.
+	 * @return true if searching the whole text
+	 */
+	public boolean getWrap() {
+		return wrap;
+	}
+
+	/** Gets the "Selected area only" option.
+	 * @return true if searching only the selected region
+	 */
+	public boolean getSelection() {
+		return selection;
+	}
+
+	/** Gets the "Replace all" option.
+	 * @return true if replacing every occurrence
+	 */
+	public boolean getReplaceAll() {
+		return replaceAll;
+	}
+
+	/** Gets the "Regular expression" option.
+	 * @return true if the quarry is a regular expression
+	 */
+	public boolean getRegex() {
+		return regex;
+	}
+
+	public boolean equals(Object o) {
+		if (!(o instanceof SearchQuery)) return false;
+		SearchQuery q = (SearchQuery) o;
+		return quarry.equals(q.quarry) && replacement.equals(q.replacement)
+			&& word == q.word && ignoreCase == q.ignoreCase 
+			&& wrap == q.wrap && selection == q.selection
+			&& replaceAll == q.replaceAll && regex == q.regex;
+	}
+
+	public int hashCode() {
+		int h = quarry.hashCode() * 31 + replacement.hashCode();
+		h = h * 2 + (word ? 1 : 0);
+		h = h * 2 + (ignoreCase ? 1 : 0);
+		h = h * 2 + (wrap ? 1 : 0);
+		h = h * 2 + (selection ? 1 : 0);
+		h = h * 2 + (replaceAll ? 1 : 0);
+		return h * 2 + (regex ? 1 : 0);
+	}
+}
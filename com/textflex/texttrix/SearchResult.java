@@ -0,0 +1,471 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+/** What a search found or changed, without any wording for the user.
+    The dialog turns a result into a message, and the host into 
+    highlighting and edits, but a result can just as well be read by
+    code that never shows a window.
+
+    <p>Positions refer to the entire text that was searched.  A result
+    that changes the text holds the new text for the region from
+    {@link #getReplaceStart()} to {@link #getReplaceEnd()} only.
+*/
+public class SearchResult {
+	/** The quarry was found and is to be highlighted. */
+	public static final int FOUND = 0;
+	/** The quarry was not found. */
+	public static final int NOT_FOUND = 1;
+	/** The selected occurrence was replaced. */
+	public static final int REPLACED = 2;
+	/** Every occurrence in a region was replaced. */
+	public static final int REPLACED_ALL = 3;
+	/** Statistics were gathered. */
+	public static final int STATS = 4;
+	/** The regular expression is invalid. */
+	public static final int BAD_PATTERN = 5;
+	/** The replacement refers to a group that the expression lacks. */
+	public static final int BAD_REPLACEMENT = 6;
+
+	private int kind = NOT_FOUND;
+	private String quarry = "";
+	private boolean word = false;
+	private int selectionStart = -1; // region to highlight, or -1
+	private int selectionEnd = -1;
+	private String text = null; // new text for the replaced region
+	// edits that make the region's new text, built only if asked for
+	private EditList edits = null;
+	private CharSequence source = null; // the text the edits apply to
+	private String replaced = ""; // text that a single replacement replaced
+	private int replaceStart = -1;
+	private int replaceEnd = -1;
+	private int count = 0; // occurrences replaced, or found
+	private int sequences = 0; // size of the list of sequences replaced
+	private int index = -1; // which occurrence was found, from 0
+	private int line = -1; // where the occurrence was found, from 1
+	private int column = -1;
+	private TextStats stats = null;
+	private WordFrequency words = null;
+	private ApproximateStats estimates = null;
+	private String reason = ""; // why the query is invalid
+
+	private SearchResult(int kind, String quarry, boolean word) {
+		this.kind = kind;
+		this.quarry = quarry;
+		this.word = word;
+	}
+
+	/** Creates the result of finding an occurrence.
+	 * @param quarry sequence searched for
+	 * @param word whether searched for as a separate word
+	 * @param start start of the occurrence
+	 * @param end end of the occurrence, non-inclusive
+	 * @param index which occurrence, counting from 0; -1 if unknown
+	 * @param count number of occurrences in the text; 0 if unknown
+	 * @return the result
+	 */
+	public static SearchResult found(
+		String quarry, 
+		boolean word, 
+		int start, 
+		int end, 
+		int index, 
+		int count) {
+		return found(quarry, word, start, end, index, count, -1, -1);
+	}
+
+	/** Creates the result of finding an occurrence on a known line.
+	 * @param quarry sequence searched for
+	 * @param word whether searched for as a separate word
+	 * @param start start of the occurrence
+	 * @param end end of the occurrence, non-inclusive
+	 * @param index which occurrence, counting from 0; -1 if unknown
+	 * @param count number of occurrences in the text; 0 if unknown
+	 * @param line line of the occurrence's start, counting from 1;
+	 * -1 if unknown
+	 * @param column column of the occurrence's start, counting from 1;
+	 * -1 if unknown
+	 * @return the result
+	 */
+	public static SearchResult found(
+		String quarry, 
+		boolean word, 
+		int start, 
+		int end, 
+		int index, 
+		int count,
+		int line,
+		int column) {
+		SearchResult result = new SearchResult(FOUND, quarry, word);
+		result.selectionStart = start;
+		result.selectionEnd = end;
+		result.index = index;
+		result.count = count;
+		result.line = line;
+		result.column = column;
+		return result;
+	}
+
+	/** Creates the result of not finding any occurrence.
+	 * @param quarry sequence searched for
+	 * @param word whether searched for as a separate word
+	 * @return the result
+	 */
+	public static SearchResult notFound(String quarry, boolean word) {
+		return new SearchResult(NOT_FOUND, quarry, word);
+	}
+
+	/** Creates the result of replacing the selected occurrence.
+	 * The caret goes just after the replacement, so that the 
+	 * replacement isn't found again if it contains the quarry.
+	 * @param replaced the text replaced
+	 * @param replacement the text that replaced it
+	 * @param start start of the replaced text
+	 * @param end end of the replaced text, non-inclusive
+	 * @return the result
+	 */
+	public static SearchResult replaced(
+		String replaced, 
+		String replacement, 
+		int start, 
+		int end) {
+		SearchResult result = new SearchResult(REPLACED, replaced, false);
+		result.replaced = replaced;
+		result.text = replacement;
+		result.replaceStart = start;
+		result.replaceEnd = end;
+		result.selectionStart = result.selectionEnd = 
+			start + replacement.length();
+		result.count = 1;
+		return result;
+	}
+
+	/** Creates the result of replacing every occurrence in a region.
+	 * @param quarry sequence replaced
+	 * @param text the region's new text
+	 * @param start start of the region
+	 * @param end end of the region, non-inclusive
+	 * @param count number of replacements
+	 * @return the result
+	 */
+	public static SearchResult replacedAll(
+		String quarry, 
+		String text, 
+		int start, 
+		int end, 
+		int count) {
+		SearchResult result = new SearchResult(REPLACED_ALL, quarry, false);
+		result.text = text;
+		result.replaceStart = start;
+		result.replaceEnd = end;
+		result.selectionStart = result.selectionEnd = start + text.length();
+		result.count = count;
+		return result;
+	}
+
+	/** Creates the result of replacing every occurrence in a region
+	 * as a list of edits, leaving the region's new text to be built 
+	 * only if asked for.
+	 * @param quarry sequence replaced
+	 * @param source the entire text before the replacements
+	 * @param edits the replacements, in order
+	 * @param start start of the region
+	 * @param end end of the region, non-inclusive
+	 * @return the result
+	 */
+	public static SearchResult replacedAll(
+		String quarry, 
+		CharSequence source, 
+		EditList edits, 
+		int start, 
+		int end) {
+		SearchResult result = new SearchResult(REPLACED_ALL, quarry, false);
+		result.source = source;
+		result.edits = edits;
+		result.replaceStart = start;
+		result.replaceEnd = end;
+		result.selectionStart = result.selectionEnd = 
+			(int) (end + edits.getDelta());
+		result.count = edits.size();
+		return result;
+	}
+
+	/** Creates the result of replacing every occurrence of several
+	 * sequences in a region.
+	 * @param sequences number of different sequences replaced
+	 * @param text the region's new text
+	 * @param start start of the region
+	 * @param end end of the region, non-inclusive
+	 * @param count number of replacements
+	 * @return the result, with an empty quarry
+	 */
+	public static SearchResult replacedAll(
+		int sequences,
+		String text, 
+		int start, 
+		int end, 
+		int count) {
+		SearchResult result = replacedAll("", text, start, end, count);
+		result.sequences = sequences;
+		return result;
+	}
+
+	/** Creates the result of gathering statistics.
+	 * @param stats the statistics
+	 * @param selectionStart start of the region to keep highlighted; 
+	 * -1 for none
+	 * @param selectionEnd end of the region to keep highlighted; 
+	 * -1 for none
+	 * @return the result
+	 */
+	public static SearchResult stats(
+		TextStats stats, 
+		int selectionStart, 
+		int selectionEnd) {
+		return stats(stats, (WordFrequency) null, selectionStart, selectionEnd);
+	}
+
+	/** Creates the result of gathering statistics along with estimates
+	 * of the distinct and most frequent words.
+	 * @param stats the statistics
+	 * @param estimates the word estimates
+	 * @param selectionStart start of the region to keep highlighted; 
+	 * -1 for none
+	 * @param selectionEnd end of the region to keep highlighted; 
+	 * -1 for none
+	 * @return the result
+	 */
+	public static SearchResult stats(
+		TextStats stats, 
+		ApproximateStats estimates,
+		int selectionStart, 
+		int selectionEnd) {
+		SearchResult result = stats(stats, selectionStart, selectionEnd);
+		result.estimates = estimates;
+		return result;
+	}
+
+	/** Creates the result of gathering statistics along with how often
+	 * each word occurs.
+	 * @param stats the statistics
+	 * @param words the word counts; <code>null</code> if not gathered
+	 * @param selectionStart start of the region to keep highlighted; 
+	 * -1 for none
+	 * @param selectionEnd end of the region to keep highlighted; 
+	 * -1 for none
+	 * @return the result
+	 */
+	public static SearchResult stats(
+		TextStats stats, 
+		WordFrequency words,
+		int selectionStart, 
+		int selectionEnd) {
+		SearchResult result = new SearchResult(STATS, "", false);
+		result.stats = stats;
+		result.words = words;
+		result.selectionStart = selectionStart;
+		result.selectionEnd = selectionEnd;
+		return result;
+	}
+
+	/** Creates the result of a query that could not be run.
+	 * @param kind {@link #BAD_PATTERN} or {@link #BAD_REPLACEMENT}
+	 * @param quarry the expression
+	 * @param reason what is wrong with it
+	 * @return the result
+	 */
+	public static SearchResult invalid(int kind, String quarry, String reason) {
+		SearchResult result = new SearchResult(kind, quarry, false);
+		result.reason = reason;
+		return result;
+	}
+
+	/** Gets the kind of result.
+	 * @return one of {@link #FOUND}, {@link #NOT_FOUND}, 
+	 * {@link #REPLACED}, {@link #REPLACED_ALL}, {@link #STATS},
+	 * {@link #BAD_PATTERN}, or {@link #BAD_REPLACEMENT}
+	 */
+	public int getKind() {
+		return kind;
+	}
+
+	/** Checks whether the result changes the text.
+	 * @return true if the region from {@link #getReplaceStart()} to 
+	 * {@link #getReplaceEnd()} is to become {@link #getText()}
+	 */
+	public boolean isTextChanged() {
+		return kind == REPLACED || kind == REPLACED_ALL && count > 0;
+	}
+
+	/** Gets the sequence searched for.
+	 * @return the quarry; for a single replacement, the text replaced
+	 */
+	public String getQuarry() {
+		return quarry;
+	}
+
+	/** Gets whether the sequence was searched for as a separate word.
+	 * @return true if only separate words were found
+	 */
+	public boolean getWord() {
+		return word;
+	}
+
+	/** Gets the start of the region to highlight.
+	 * @return the start; -1 if none
+	 */
+	public int getSelectionStart() {
+		return selectionStart;
+	}
+
+	/** Gets the end of the region to highlight.
+	 * @return the end, non-inclusive; -1 if none
+	 */
+	public int getSelectionEnd() {
+		return selectionEnd;
+	}
+
+	/** Gets the new text for the replaced region.
+	 * For replacements listed as edits, builds the text the first time.
+	 * @return the region's new text; <code>null</code> if nothing was 
+	 * replaced
+	 */
+	public String getText() {
+		if (text == null && edits != null) {
+			text = edits.apply(source, replaceStart, replaceEnd);
+		}
+		return text;
+	}
+
+	/** Gets the replacements as edits to the original text, which can
+	 * be made in place instead of swapping in {@link #getText()}.
+	 * @return the edits; <code>null</code> if the replacements only come
+	 * as the region's new text
+	 */
+	public EditList getEdits() {
+		return edits;
+	}
+
+	/** Gets the text that a single replacement replaced.
+	 * @return the replaced text; empty unless {@link #REPLACED}
+	 */
+	public String getReplaced() {
+		return replaced;
+	}
+
+	/** Gets the start of the replaced region.
+	 * @return the start; -1 if nothing was replaced
+	 */
+	public int getReplaceStart() {
+		return replaceStart;
+	}
+
+	/** Gets the end of the replaced region.
+	 * @return the end, non-inclusive; -1 if nothing was replaced
+	 */
+	public int getReplaceEnd() {
+		return replaceEnd;
+	}
+
+	/** Gets the number of replacements made, or for a find, the number
+	 * of occurrences in the text.
+	 * @return the count; 0 if unknown
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/** Gets the number of sequences in the list that a replace-all
+	 * replaced, for a replace-all of several sequences at once.
+	 * @return the number of sequences; 0 if a single quarry was replaced
+	 */
+	public int getSequences() {
+		return sequences;
+	}
+
+	/** Gets which occurrence was found.
+	 * @return the occurrence's position among all of them, counting 
+	 * from 0; -1 if unknown
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/** Gets the line on which the occurrence found starts.
+	 * @return the line number, counting from 1; -1 if unknown
+	 */
+	public int getLine() {
+		return line;
+	}
+
+	/** Gets the column at which the occurrence found starts.
+	 * @return the column, counting from 1; -1 if unknown
+	 */
+	public int getColumn() {
+		return column;
+	}
+
+	/** Gets the gathered statistics.
+	 * @return the statistics; <code>null</code> unless {@link #STATS}
+	 */
+	public TextStats getStats() {
+		return stats;
+	}
+
+	/** Gets how often each word occurs, for {@link #STATS}.
+	 * @return the word counts; <code>null</code> if not gathered
+	 */
+	public WordFrequency getWordFrequency() {
+		return words;
+	}
+
+	/** Gets the estimates of the distinct and most frequent words, for
+	 * {@link #STATS} on text too large to tally exactly.
+	 * @return the estimates; <code>null</code> if not estimated
+	 */
+	public ApproximateStats getApproximateStats() {
+		return estimates;
+	}
+
+	/** Gets what is wrong with an invalid query.
+	 * @return the reason; empty if the query was valid
+	 */
+	public String getReason() {
+		return reason;
+	}
+}
@@ -0,0 +1,129 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+/** Words a {@link SearchResult} for the user.
+    Searching and replacing only report what happened; the friendly
+    statements are put together here, once per request, after the
+    search is done, rather than each time a match is found.
+    Each result has several statements to choose from, the plainest 
+    first, so that the results label doesn't read the same every time.
+*/
+public class SearchSummary {
+
+	/** Gets the statements that could summarize a result.
+	 * @param result what a search found or changed
+	 * @return statements to choose from, the plainest first
+	 */
+	public static String[] describe(SearchResult result) {
+		String quarry = result.getQuarry();
+		int count = result.getCount();
+		switch (result.getKind()) {
+			case SearchResult.FOUND:
+				String which = "";
+				if (result.getIndex() != -1) {
+					which = "  (" + (result.getIndex() + 1) + " of " + count + ")";
+				}
+				String where = "";
+				if (result.getLine() != -1) {
+					where = " at line " + result.getLine();
+				}
+				return new String[] {
+					(result.getWord() ? "Found the word " : "Found ") 
+						+ quarry + where + "." + which,
+					"Eureka!  I found " + quarry + where + "." + which,
+					"Caught " + quarry + " red-handed" + where 
+						+ ", police officer." + which,
+					"Dr. " + quarry + "-stone, I presume?" + which
+				};
+			case SearchResult.NOT_FOUND:
+				return new String[] {
+					"Sorry, I couldn't find " + quarry + " here."
+						+ (result.getWord() ? "  Is it part of another word?" : ""),
+					quarry + " has escaped!",
+					"Sir, all I'm picking up is static!"
+				};
+			case SearchResult.REPLACED:
+				String replaced = result.getReplaced();
+				String replacement = result.getText();
+				return new String[] {
+					"Replaced " + replaced + " with " + replacement + " once.",
+					"Boys and girls, Mr. " + replacement 
+						+ " will be your substitute teacher today.",
+					replaced + ", you're fired!",
+					replacement + ", you're hired!"
+				};
+			case SearchResult.REPLACED_ALL:
+				int sequences = result.getSequences();
+				if (sequences > 0) {
+					return new String[] {
+						"Replaced " + sequences + " sequences " + count + " times.",
+						count + " replacements in one sitting.  Got anymore?",
+						"Goodbye, all " + sequences + " of you (" + count + "x)"
+					};
+				}
+				if (count > 10) {
+					return new String[] {
+						"Replaced " + quarry + " " + count + " times.",
+						"Mmm mm!  That felt good.  Gobbled up " + count 
+							+ " " + quarry + "\'s.",
+						"Whew!  " + count + " occurances of " + quarry 
+							+ ", all replaced"
+					};
+				}
+				return new String[] {
+					"Replaced " + quarry + " " + count + " times.",
+					count + " replacements, and I'm still hungry.  Got anymore?",
+					"Goodbye, " + quarry + " (" + count + "x)"
+				};
+			case SearchResult.STATS:
+				TextStats stats = result.getStats();
+				return new String[] {
+					stats.getChars() + " characters, " + stats.getWords() 
+						+ " words, " + stats.getLines() + " lines"
+				};
+			case SearchResult.BAD_PATTERN:
+				return new String[] {
+					"Can't make sense of " + quarry + ": " + result.getReason()
+				};
+			default:
+				// the replacement refers to a missing group
+				return new String[] { result.getReason() };
+		}
+	}
+}
@@ -0,0 +1,282 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.textflex.texttrix;
+
+import javax.swing.*;
+import javax.swing.event.*;
+import java.util.concurrent.*;
+import java.awt.event.*;
+
+/** Runs long searches, such as a replace-all or statistics on a huge
+    document, on a background thread so that the editor stays 
+    responsive.
+    Only one search runs at a time: submitting a new one cancels any
+    search still running, so the newest request always wins.  While a 
+    search runs, listeners hear about its progress every tenth of a 
+    second on the event dispatch thread.  A finished search hands its 
+    result back on the event dispatch thread, but only if nothing has
+    canceled or replaced it in the meantime.
+
+    <p>Except for the searches themselves, the worker should only be
+    used from the event dispatch thread.
+*/
+public class SearchWorker {
+	/** Default for the smallest region searched in the background. */
+	public static final int DEFAULT_THRESHOLD = 1 << 20;
+	private static final int PROGRESS_DELAY = 100; // ms between progress reports
+	
+	private ExecutorService executor = null;
+	private Job<?> current = null; // the search running or waiting to run
+	private Future<?> future = null; // the current search's task
+	private Timer timer = null; // prompts the progress reports
+	private EventListenerList listeners = new EventListenerList();
+	private int threshold = DEFAULT_THRESHOLD;
+
+	/** A search to run in the background.
+	 * @param <T> type of the search's result
+	 */
+	public abstract static class Job<T> {
+		private String description = "";
+		private Progress progress = new Progress();
+
+		/** Creates a search.
+		 * @param description what the search does, such as 
+		 * "Replacing foo", to show alongside its progress
+		 */
+		public Job(String description) {
+			this.description = description;
+		}
+
+		/** Runs the search on the background thread.
+		 * The search should leave the document and any Swing components 
+		 * alone, and should report to the progress object, which throws
+		 * a <code>CancellationException</code> once the search is canceled.
+		 * @param progress progress of the search
+		 * @return the result
+		 * @throws Exception if the search fails
+		 */
+		protected abstract T call(Progress progress) throws Exception;
+
+		/** Takes the result of the search on the event dispatch thread.
+		 * Only called if the search was neither canceled nor replaced by
+		 * a newer one.
+		 * @param result the result from {@link #call(Progress)}
+		 */
+		protected abstract void done(T result);
+
+		/** Reports a search that failed, on the event dispatch thread.
+		 * @param t what went wrong
+		 */
+		protected void failed(Throwable t) {
+		}
+
+		/** Gets what the search does.
+		 * @return the description
+		 */
+		public String getDescription() {
+			return description;
+		}
+
+		/** Gets the search's progress.
+		 * @return the progress
+		 */
+		public Progress getProgress() {
+			return progress;
+		}
+	}
+
+	/** Creates a worker.  Its thread starts with the first search.
+	 */
+	public SearchWorker() {
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Search and Stats");
+				// never keep the editor from exiting
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		timer = new Timer(PROGRESS_DELAY, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				fireStateChanged();
+			}
+		});
+	}
+
+	/** Sets the smallest region to search in the background.
+	 * @param threshold number of characters at or above which searches
+	 * run in the background; <code>Integer.MAX_VALUE</code> always
+	 * searches on the event dispatch thread
+	 */
+	public void setThreshold(int threshold) {
+		this.threshold = threshold;
+	}
+
+	/** Gets the smallest region to search in the background.
+	 * @return number of characters at or above which searches run in the
+	 * background
+	 */
+	public int getThreshold() {
+		return threshold;
+	}
+
+	/** Checks whether a region is large enough to search in the 
+	 * background.
+	 * @param length number of characters in the region
+	 * @return true if the region should be searched in the background
+	 */
+	public boolean isBackground(int length) {
+		return length >= threshold;
+	}
+
+	/** Starts a search in the background, canceling any search still
+	 * running.
+	 * @param job the search to run
+	 */
+	public <T> void submit(final Job<T> job) {
+		cancel();
+		current = job;
+		future = executor.submit(new Runnable() {
+			public void run() {
+				try {
+					job.getProgress().checkCanceled();
+					final T result = job.call(job.getProgress());
+					SwingUtilities.invokeLater(new Runnable() {
+						public void run() {
+							if (finish(job)) job.done(result);
+						}
+					});
+				} catch (CancellationException e) {
+					// cancel() has already moved on
+				} catch (final Throwable t) {
+					SwingUtilities.invokeLater(new Runnable() {
+						public void run() {
+							if (finish(job)) job.failed(t);
+						}
+					});
+				}
+			}
+		});
+		timer.start();
+		fireStateChanged();
+	}
+
+	/** Cancels the search in progress, if any.  The search stops at its
+	 * next check for cancellation, and its result is never delivered.
+	 * A search that has already committed to its changes, such as one
+	 * moving a rewritten file into place, is left to finish and deliver
+	 * its result instead.
+	 * @return true if a search was stopped before changing anything;
+	 * false if nothing was running or the search had already committed
+	 * @see Progress#commit()
+	 */
+	public boolean cancel() {
+		if (current == null) return false;
+		// too late to stop it; let it report what it did
+		if (!current.getProgress().cancel()) return false;
+		// interrupt the search if it is blocked, eg reading a file
+		future.cancel(true);
+		current = null;
+		future = null;
+		timer.stop();
+		fireStateChanged();
+		return true;
+	}
+
+	/** Clears a search that has just ended, unless something else already
+	 * cleared it.
+	 * @param job the search that ended
+	 * @return true if the search was still the current one
+	 */
+	private boolean finish(Job<?> job) {
+		if (current != job || job.getProgress().isCanceled()) return false;
+		current = null;
+		future = null;
+		timer.stop();
+		fireStateChanged();
+		return true;
+	}
+
+	/** Checks whether a search is running or waiting to run.
+	 * @return true if a search is under way
+	 */
+	public boolean isRunning() {
+		return current != null;
+	}
+
+	/** Gets the search under way.
+	 * @return the search; <code>null</code> if none
+	 */
+	public Job<?> getCurrent() {
+		return current;
+	}
+
+	/** Stops the worker's thread, canceling any search still running.
+	 */
+	public void shutdown() {
+		cancel();
+		executor.shutdownNow();
+	}
+
+	/** Adds a listener to notify of progress and of searches starting 
+	 * and ending.
+	 * @param l listener to add
+	 */
+	public void addChangeListener(ChangeListener l) {
+		listeners.add(ChangeListener.class, l);
+	}
+
+	/** Removes a listener.
+	 * @param l listener to remove
+	 */
+	public void removeChangeListener(ChangeListener l) {
+		listeners.remove(ChangeListener.class, l);
+	}
+
+	/** Notifies the listeners.
+	 */
+	private void fireStateChanged() {
+		Object[] list = listeners.getListenerList();
+		ChangeEvent e = null;
+		for (int i = list.length - 2; i >= 0; i -= 2) {
+			if (list[i] == ChangeListener.class) {
+				if (e == null) e = new ChangeEvent(this);
+				((ChangeListener) list[i + 1]).stateChanged(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,291 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.textflex.texttrix;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+
+/** Replace-all for files too large to hold in memory.
+    The file is read through a fixed-size buffer and the result
+    written to a temporary file beside it, which then takes the
+    original's place in a single atomic rename, so that the original
+    is never left half-written.  The temporary file takes on the
+    original's permissions and, where allowed, its owner first, and a
+    symbolic link is followed so that the file it points to is the one
+    replaced.  Memory use stays the same however
+    large the file.
+
+    <p>An occurrence can straddle two buffer loads, so the last few
+    characters of each load, too few to decide on yet, are carried over
+    to the front of the next.  The character just before the buffer is
+    remembered as well, so that "Whole word only" checks the same
+    neighbours that <code>Plug.replace</code> would.  The replacements
+    made are exactly those of <code>Plug.replace</code> over the whole
+    file.
+*/
+public class StreamingReplace {
+	/** Default buffer size, in characters. */
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	private String quarry = "";
+	private String replacement = "";
+	private boolean word = false;
+	private SearchPattern pattern = null;
+	private Charset charset = StandardCharsets.UTF_8;
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+	/** Creates a replace-all.
+	 * @param quarry sequence to find
+	 * @param replacement sequence with which to substitute
+	 * @param word if true, only replace the sequence as a separate word
+	 * @param ignoreCase if true, ignore upper/lower case
+	 */
+	public StreamingReplace(
+		String quarry, 
+		String replacement, 
+		boolean word, 
+		boolean ignoreCase) {
+		this.quarry = quarry;
+		this.replacement = replacement;
+		this.word = word;
+		pattern = new SearchPattern(quarry, ignoreCase);
+	}
+
+	/** Sets the encoding of the file, used both to read and to write it.
+	 * @param charset the encoding; UTF-8 by default
+	 */
+	public void setCharset(Charset charset) {
+		this.charset = charset;
+	}
+
+	/** Sets the size of the buffer.
+	 * @param bufferSize number of characters to read at a time; grown as
+	 * needed to fit several times the sequence's length
+	 */
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	/** Replaces every occurrence in a file.
+	 * The file is only rewritten if there is something to replace.
+	 * A file that isn't valid in the encoding is left alone, rather than
+	 * rewritten with its undecodable bytes lost.
+	 * @param file the file
+	 * @param progress progress to report to, counting bytes read;
+	 * may be <code>null</code>
+	 * @return number of replacements
+	 * @throws IOException if the file can't be read, isn't valid in the
+	 * encoding, or can't be replaced
+	 * @throws java.util.concurrent.CancellationException if canceled 
+	 * before the file is moved into place, leaving the file untouched
+	 */
+	public long replace(Path file, Progress progress) throws IOException {
+		int m = quarry.length();
+		if (m == 0) return 0;
+		// replace the file that a symbolic link points to, leaving the
+		// link in place
+		file = file.toRealPath();
+		// opened first, so that a file that can't be read leaves no 
+		// temporary file behind
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		Path temp = null;
+		long count = 0;
+		boolean done = false;
+		try {
+			temp = Files.createTempFile(
+				file.getParent(), file.getFileName().toString(), ".tmp");
+			if (progress != null) progress.begin(channel.size());
+			// report malformed input rather than quietly rewriting it
+			Reader in = new InputStreamReader(
+				Channels.newInputStream(channel),
+				charset.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPORT)
+					.onUnmappableCharacter(CodingErrorAction.REPORT));
+			Writer out = new BufferedWriter(new OutputStreamWriter(
+				Files.newOutputStream(temp), charset.newEncoder()), bufferSize);
+			try {
+				count = replace(in, out, channel, progress);
+			} finally {
+				out.close();
+			}
+			done = true;
+		} finally {
+			channel.close();
+			if (temp != null && (!done || count == 0)) Files.deleteIfExists(temp);
+		}
+		if (count > 0) {
+			boolean moved = false;
+			try {
+				// past this point, canceling no longer stops the file
+				// from being replaced
+				if (progress != null) progress.commit();
+				copyAttributes(file, temp);
+				Files.move(temp, file, 
+					StandardCopyOption.ATOMIC_MOVE, 
+					StandardCopyOption.REPLACE_EXISTING);
+				moved = true;
+			} finally {
+				if (!moved) Files.deleteIfExists(temp);
+			}
+		}
+		return count;
+	}
+
+	/** Gives a file the permissions, owner, and group of another, where
+	 * the file system has them.
+	 * @param from the file to copy from
+	 * @param to the file to copy to
+	 * @throws IOException if the permissions can't be copied
+	 */
+	private static void copyAttributes(Path from, Path to) throws IOException {
+		PosixFileAttributeView view = 
+			Files.getFileAttributeView(from, PosixFileAttributeView.class);
+		if (view == null) return;
+		PosixFileAttributes attributes = view.readAttributes();
+		Files.setPosixFilePermissions(to, attributes.permissions());
+		PosixFileAttributeView toView = 
+			Files.getFileAttributeView(to, PosixFileAttributeView.class);
+		// usually only the superuser can give a file away, in which case
+		// the file keeps the current user as its owner
+		try {
+			toView.setOwner(attributes.owner());
+		} catch (IOException e) {
+		}
+		try {
+			toView.setGroup(attributes.group());
+		} catch (IOException e) {
+		}
+	}
+
+	/** Copies a stream of text, replacing every occurrence along the way.
+	 * @param in the text to read
+	 * @param out where to write the text with its replacements
+	 * @return number of replacements
+	 * @throws IOException if the text can't be read or written
+	 */
+	public long replace(Reader in, Writer out) throws IOException {
+		return quarry.length() == 0 ? copy(in, out) : replace(in, out, null, null);
+	}
+
+	/** Copies a stream of text, replacing every occurrence along the way.
+	 * @param channel the channel underlying the reader, to report 
+	 * progress from; may be <code>null</code>
+	 */
+	private long replace(
+		Reader in, 
+		Writer out, 
+		FileChannel channel, 
+		Progress progress) 
+		throws IOException {
+		int m = pattern.length();
+		char[] buf = new char[Math.max(bufferSize, 4 * (m + 1))];
+		CharBuffer text = CharBuffer.wrap(buf);
+		long count = 0;
+		int n = 0; // characters in the buffer
+		int before = -1; // the character just before the buffer; -1 if none
+		boolean eof = false;
+		while (!eof) {
+			// fill the rest of the buffer
+			int read = 0;
+			while (n < buf.length && (read = in.read(buf, n, buf.length - n)) != -1) {
+				n += read;
+			}
+			eof = read == -1;
+			if (progress != null) {
+				if (channel != null) progress.setDone(channel.position());
+				progress.checkCanceled();
+			}
+			
+			// occurrences starting before the limit can be decided now, 
+			// including the character after each; the rest wait for more text
+			int limit = eof ? n - m + 1 : n - m;
+			int pos = 0;
+			int loc = 0;
+			while (pos < limit && (loc = pattern.indexOf(text, pos, limit)) != -1) {
+				if (word && !isWordAt(buf, n, loc, m, before)) {
+					// copy up to and including the rejected start
+					out.write(buf, pos, loc + 1 - pos);
+					pos = loc + 1;
+					continue;
+				}
+				out.write(buf, pos, loc - pos);
+				out.write(replacement);
+				count++;
+				pos = loc + m;
+			}
+			
+			// write out what can no longer start an occurrence, and carry
+			// the rest over to the front of the buffer
+			int keep = eof ? n : Math.max(pos, Math.max(limit, 0));
+			out.write(buf, pos, keep - pos);
+			if (keep > 0) before = buf[keep - 1];
+			System.arraycopy(buf, keep, buf, 0, n - keep);
+			n -= keep;
+		}
+		out.flush();
+		return count;
+	}
+
+	/** Checks whether an occurrence in the buffer stands as a separate 
+	 * word.
+	 * @param n number of characters in the buffer
+	 * @param before the character just before the buffer; -1 if none
+	 */
+	private static boolean isWordAt(char[] buf, int n, int loc, int m, int before) {
+		int prev = loc > 0 ? buf[loc - 1] : before;
+		int next = loc + m < n ? buf[loc + m] : -1;
+		return (prev == -1 || !SearchPattern.isWordChar((char) prev))
+			&& (next == -1 || !SearchPattern.isWordChar((char) next));
+	}
+
+	/** Copies a stream unchanged.
+	 * @return 0, the number of replacements
+	 */
+	private long copy(Reader in, Writer out) throws IOException {
+		char[] buf = new char[bufferSize];
+		int read = 0;
+		while ((read = in.read(buf)) != -1) {
+			out.write(buf, 0, read);
+		}
+		out.flush();
+		return 0;
+	}
+}
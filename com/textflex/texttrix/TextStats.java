@@ -0,0 +1,255 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.textflex.texttrix;
+
+import java.util.concurrent.*;
+
+/** Character, word, and line counts for a section of text.
+    The counts are gathered in a single pass over the characters,
+    counting a word each time a run of letters and digits begins and
+    a line each time a newline passes, so that nothing is allocated
+    along the way no matter how large the text.
+
+    <p>Sections of at least {@link #getParallelThreshold()} characters
+    are split into chunks and counted on the common fork/join pool.
+    Each chunk also notes whether it starts and ends inside a word, so
+    that a word cut in two by a chunk boundary is only counted once
+    when the chunks' counts are merged.
+*/
+public class TextStats {
+	/** Default for the smallest section counted in parallel. */
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 1 << 22;
+	// smallest chunk worth handing to another thread
+	private static final int MIN_CHUNK = 1 << 16;
+	// smallest piece to count between progress reports
+	private static final int PROGRESS_PIECE = 1 << 20;
+	private static volatile int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+	private int chars = 0; // number of characters
+	private int words = 0; // number of whole or partial words
+	private int lines = 1; // number of lines, including an unterminated last one
+	// whether the first and last characters are part of a word, for merging
+	private boolean startsInWord = false;
+	private boolean endsInWord = false;
+
+	/** Creates a set of statistics.
+	 * @param chars number of characters
+	 * @param words number of words
+	 * @param lines number of lines
+	 */
+	public TextStats(int chars, int words, int lines) {
+		this.chars = chars;
+		this.words = words;
+		this.lines = lines;
+	}
+
+	/** Sets the smallest section to count in parallel.
+	 * @param threshold number of characters at or above which
+	 * sections are split up and counted on several threads;
+	 * <code>Integer.MAX_VALUE</code> always counts on the calling thread
+	 */
+	public static void setParallelThreshold(int threshold) {
+		parallelThreshold = Math.max(threshold, MIN_CHUNK);
+	}
+
+	/** Gets the smallest section to count in parallel.
+	 * @return number of characters at or above which sections are
+	 * counted on several threads
+	 */
+	public static int getParallelThreshold() {
+		return parallelThreshold;
+	}
+
+	/** Gathers the statistics for a section of text, including the
+	 * first but not the last index.
+	 * As with <code>Plug.wordCount</code>, a word cut off by either end
+	 * of the section still counts, and as with <code>Plug.lineCount</code>,
+	 * the section always has at least one line.
+	 * Large sections are counted in parallel when more than one
+	 * processor is available, with the same results.
+	 * @param s text to scan; must not change during the scan
+	 * @param start first character to count
+	 * @param end first character to no longer count
+	 * @return the statistics for the section
+	 */
+	public static TextStats scan(CharSequence s, int start, int end) {
+		if (end - start >= parallelThreshold 
+			&& Runtime.getRuntime().availableProcessors() > 1) {
+			// aim for a few chunks per thread to even out the load
+			int chunk = Math.max(MIN_CHUNK, 
+				(end - start) / (ForkJoinPool.getCommonPoolParallelism() * 4));
+			return ForkJoinPool.commonPool().invoke(
+				new ScanTask(s, start, end, chunk));
+		}
+		return scanSequential(s, start, end);
+	}
+
+	/** Gathers the statistics for a section of text piece by piece,
+	 * reporting progress and stopping if canceled after each piece.
+	 * Each piece is counted as by {@link #scan(CharSequence, int, int)},
+	 * in parallel if large enough.
+	 * @param s text to scan; must not change during the scan
+	 * @param start first character to count
+	 * @param end first character to no longer count
+	 * @param progress progress to report to
+	 * @return the statistics for the section
+	 * @throws java.util.concurrent.CancellationException if canceled
+	 */
+	public static TextStats scan(
+		CharSequence s, 
+		int start, 
+		int end, 
+		Progress progress) {
+		progress.begin(end - start);
+		// pieces big enough to still count in parallel
+		int piece = Math.max(PROGRESS_PIECE, parallelThreshold);
+		TextStats stats = scanSequential(s, start, start);
+		int i = start;
+		while (i < end) {
+			// in longs, since the piece may be as large as an int allows
+			int next = (int) Math.min((long) i + piece, end);
+			stats = stats.merge(scan(s, i, next));
+			i = next;
+			progress.setDone(next - start);
+			progress.checkCanceled();
+		}
+		return stats;
+	}
+
+	/** Gathers the statistics for a section of text on the calling thread.
+	 * @param s text to scan
+	 * @param start first character to count
+	 * @param end first character to no longer count
+	 * @return the statistics for the section
+	 */
+	private static TextStats scanSequential(CharSequence s, int start, int end) {
+		int words = 0;
+		int newlines = 0;
+		boolean inWord = false;
+		for (int i = start; i < end; i++) {
+			char c = s.charAt(i);
+			if (SearchPattern.isWordChar(c)) {
+				// count each word as it begins
+				if (!inWord) {
+					words++;
+					inWord = true;
+				}
+			} else {
+				inWord = false;
+				if (c == '\n') newlines++;
+			}
+		}
+		TextStats stats = new TextStats(Math.max(end - start, 0), words, newlines + 1);
+		if (start < end) {
+			stats.startsInWord = SearchPattern.isWordChar(s.charAt(start));
+			stats.endsInWord = inWord;
+		}
+		return stats;
+	}
+
+	/** Combines the statistics for this section with those of the section
+	 * that immediately follows it.
+	 * A word running across the boundary between the two sections is
+	 * counted only once, and the line that the boundary splits only once.
+	 * @param next statistics for the following section
+	 * @return statistics for the two sections together
+	 */
+	private TextStats merge(TextStats next) {
+		if (chars == 0) return next;
+		if (next.chars == 0) return this;
+		int joined = endsInWord && next.startsInWord ? 1 : 0;
+		TextStats stats = new TextStats(
+			chars + next.chars, 
+			words + next.words - joined, 
+			lines + next.lines - 1);
+		stats.startsInWord = startsInWord;
+		stats.endsInWord = next.endsInWord;
+		return stats;
+	}
+
+	/** Counts a section by splitting it in half until the pieces are
+	 * small enough to count directly, then merging the pieces' counts.
+	 */
+	private static class ScanTask extends RecursiveTask<TextStats> {
+		private static final long serialVersionUID = 1L;
+
+		private CharSequence s = null;
+		private int start = 0;
+		private int end = 0;
+		private int chunk = 0;
+
+		ScanTask(CharSequence s, int start, int end, int chunk) {
+			this.s = s;
+			this.start = start;
+			this.end = end;
+			this.chunk = chunk;
+		}
+
+		protected TextStats compute() {
+			if (end - start <= chunk) {
+				return scanSequential(s, start, end);
+			}
+			int mid = start + (end - start) / 2;
+			ScanTask left = new ScanTask(s, start, mid, chunk);
+			ScanTask right = new ScanTask(s, mid, end, chunk);
+			left.fork();
+			TextStats rightStats = right.compute();
+			return left.join().merge(rightStats);
+		}
+	}
+
+	/** Gets the number of characters.
+	 * @return number of characters
+	 */
+	public int getChars() {
+		return chars;
+	}
+
+	/** Gets the number of words.
+	 * @return number of words
+	 */
+	public int getWords() {
+		return words;
+	}
+
+	/** Gets the number of lines.
+	 * @return number of lines
+	 */
+	public int getLines() {
+		return lines;
+	}
+}
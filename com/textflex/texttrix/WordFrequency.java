@@ -0,0 +1,322 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-6
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+import java.util.*;
+
+/** How often each word occurs in a section of text, for finding the 
+    most frequent words and counting the distinct ones.
+    Words are runs of letters and digits, as with {@link TextStats}, 
+    so that the word totals agree.
+
+    <p>Rather than creating a string for each word, the table records
+    each distinct word as the offset and length of its first occurrence
+    in the text, in primitive arrays, and compares later words against
+    the text itself.  The table uses open addressing with linear 
+    probing, keeping its slots at most half full, so that a lookup 
+    rarely takes more than a probe or two.  Memory grows with the 
+    number of distinct words, not with the size of the text, and only
+    the few words asked for with {@link #getWord(int)} ever become 
+    strings.  The text must not change while the counts are in use.
+*/
+public class WordFrequency {
+	// smallest piece to count between progress reports
+	private static final int PROGRESS_PIECE = 1 << 20;
+	private static final int INITIAL_ENTRIES = 1 << 10;
+
+	private CharSequence text = null;
+	private boolean ignoreCase = false;
+	private int words = 0; // number of words, including repeats
+	private int size = 0; // number of distinct words
+	// for each distinct word, in order of first occurrence: where it
+	// first occurs, its length, how often it occurs, and its hash
+	private int[] starts = new int[INITIAL_ENTRIES];
+	private int[] lengths = new int[INITIAL_ENTRIES];
+	private int[] counts = new int[INITIAL_ENTRIES];
+	private int[] hashes = new int[INITIAL_ENTRIES];
+	// hash table of one more than the index of each word; 0 if empty
+	private int[] slots = new int[INITIAL_ENTRIES * 2];
+
+	private WordFrequency(CharSequence text, boolean ignoreCase) {
+		this.text = text;
+		this.ignoreCase = ignoreCase;
+	}
+
+	/** Counts the words in a section of text.
+	 * As with {@link TextStats#scan(CharSequence, int, int)}, a word 
+	 * cut off by either end of the section still counts.
+	 * @param s text to count; must not change while the counts are in
+	 * use
+	 * @param start first character to count
+	 * @param end first character to no longer count
+	 * @param ignoreCase if true, count words differing only in upper and
+	 * lower case as the same word
+	 * @return the counts
+	 */
+	public static WordFrequency count(
+		CharSequence s, 
+		int start, 
+		int end, 
+		boolean ignoreCase) {
+		return count(s, start, end, ignoreCase, null);
+	}
+
+	/** Counts the words in a section of text, reporting progress and 
+	 * stopping if canceled.
+	 * @param s text to count; must not change while the counts are in
+	 * use
+	 * @param start first character to count
+	 * @param end first character to no longer count
+	 * @param ignoreCase if true, count words differing only in upper and
+	 * lower case as the same word
+	 * @param progress progress to report to; <code>null</code> if not
+	 * tracking progress
+	 * @return the counts
+	 * @throws java.util.concurrent.CancellationException if canceled
+	 */
+	public static WordFrequency count(
+		CharSequence s, 
+		int start, 
+		int end, 
+		boolean ignoreCase,
+		Progress progress) {
+		WordFrequency frequency = new WordFrequency(s, ignoreCase);
+		if (progress != null) progress.begin(end - start);
+		long next = (long) start + PROGRESS_PIECE;
+		int i = start;
+		while (i < end) {
+			char c = s.charAt(i);
+			if (!SearchPattern.isWordChar(c)) {
+				i++;
+			} else {
+				// hash the word as it is read, so that it is only read 
+				// again if a word with the same hash is already stored
+				int wordStart = i;
+				int h = 0;
+				do {
+					h = 31 * h + (ignoreCase ? SearchPattern.fold(c) : c);
+					if (++i == end) break;
+					c = s.charAt(i);
+				} while (SearchPattern.isWordChar(c));
+				frequency.add(wordStart, i - wordStart, h);
+			}
+			if (progress != null && i >= next) {
+				progress.setDone(i - start);
+				progress.checkCanceled();
+				next = (long) i + PROGRESS_PIECE;
+			}
+		}
+		return frequency;
+	}
+
+	/** Counts an occurrence of a word.
+	 * @param start start of the occurrence
+	 * @param length length of the word
+	 * @param h hash of the word's characters, folded if ignoring case
+	 */
+	private void add(int start, int length, int h) {
+		words++;
+		// spread the hash's bits, since only the lowest pick the slot
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		int mask = slots.length - 1;
+		int slot = h & mask;
+		int entry;
+		while ((entry = slots[slot] - 1) != -1) {
+			if (hashes[entry] == h && lengths[entry] == length
+				&& matches(starts[entry], start, length)) {
+				counts[entry]++;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		
+		// a new word
+		if (size == starts.length) {
+			int n = size * 2;
+			starts = Arrays.copyOf(starts, n);
+			lengths = Arrays.copyOf(lengths, n);
+			counts = Arrays.copyOf(counts, n);
+			hashes = Arrays.copyOf(hashes, n);
+		}
+		starts[size] = start;
+		lengths[size] = length;
+		counts[size] = 1;
+		hashes[size] = h;
+		slots[slot] = ++size;
+		if (size * 2 > slots.length) {
+			rehash(slots.length * 2);
+		}
+	}
+
+	/** Checks whether two occurrences of the same length hold the same
+	 * word.
+	 */
+	private boolean matches(int a, int b, int length) {
+		for (int i = 0; i < length; i++) {
+			char x = text.charAt(a + i);
+			char y = text.charAt(b + i);
+			if (x != y && (!ignoreCase 
+				|| SearchPattern.fold(x) != SearchPattern.fold(y))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Moves the words into a larger table, using their stored hashes
+	 * rather than reading the words again.
+	 */
+	private void rehash(int capacity) {
+		slots = new int[capacity];
+		int mask = capacity - 1;
+		for (int entry = 0; entry < size; entry++) {
+			int slot = hashes[entry] & mask;
+			while (slots[slot] != 0) slot = (slot + 1) & mask;
+			slots[slot] = entry + 1;
+		}
+	}
+
+	/** Gets the number of words, counting each repeat.
+	 * @return number of words
+	 */
+	public int getWords() {
+		return words;
+	}
+
+	/** Gets the number of distinct words.
+	 * @return number of distinct words
+	 */
+	public int getDistinctWords() {
+		return size;
+	}
+
+	/** Gets the most frequent words.
+	 * Keeps only the words so far most frequent in a heap as it goes
+	 * through the table, so that picking a few words out of many takes
+	 * neither sorting the whole table nor memory beyond the heap.
+	 * Words occurring equally often are ordered by first occurrence.
+	 * @param n the most words to get
+	 * @return the words, identified as for {@link #getWord(int)}, most
+	 * frequent first
+	 */
+	public int[] getTop(int n) {
+		n = Math.max(Math.min(n, size), 0);
+		// min-heap of the most frequent words, with the least of them
+		// at the top, ready to give up its place
+		int[] heap = new int[n];
+		int heapSize = 0;
+		for (int entry = 0; entry < size; entry++) {
+			if (heapSize < n) {
+				heap[heapSize] = entry;
+				siftUp(heap, heapSize++);
+			} else if (n > 0 && ranksAbove(entry, heap[0])) {
+				heap[0] = entry;
+				siftDown(heap, heapSize);
+			}
+		}
+		// take the least first, filling in from the back
+		int[] top = new int[n];
+		while (heapSize > 0) {
+			top[--heapSize] = heap[0];
+			heap[0] = heap[heapSize];
+			siftDown(heap, heapSize);
+		}
+		return top;
+	}
+
+	/** Checks whether one word is more frequent than another, or 
+	 * equally frequent but first occurs earlier.
+	 */
+	private boolean ranksAbove(int a, int b) {
+		return counts[a] > counts[b] || counts[a] == counts[b] && a < b;
+	}
+
+	private void siftUp(int[] heap, int i) {
+		int entry = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (!ranksAbove(heap[parent], entry)) break;
+			heap[i] = heap[parent];
+			i = parent;
+		}
+		heap[i] = entry;
+	}
+
+	private void siftDown(int[] heap, int heapSize) {
+		if (heapSize == 0) return;
+		int entry = heap[0];
+		int i = 0;
+		int child;
+		while ((child = 2 * i + 1) < heapSize) {
+			// the lesser child
+			if (child + 1 < heapSize && ranksAbove(heap[child], heap[child + 1])) {
+				child++;
+			}
+			if (!ranksAbove(entry, heap[child])) break;
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = entry;
+	}
+
+	/** Gets a word as a string.
+	 * @param word the word, as identified by {@link #getTop(int)}
+	 * @return the word as it first occurs, or in lower case if ignoring
+	 * case
+	 */
+	public String getWord(int word) {
+		int start = starts[word];
+		int end = start + lengths[word];
+		if (!ignoreCase) return text.subSequence(start, end).toString();
+		StringBuilder s = new StringBuilder(lengths[word]);
+		for (int i = start; i < end; i++) {
+			s.append(SearchPattern.fold(text.charAt(i)));
+		}
+		return s.toString();
+	}
+
+	/** Gets how often a word occurs.
+	 * @param word the word, as identified by {@link #getTop(int)}
+	 * @return number of occurrences
+	 */
+	public int getCount(int word) {
+		return counts[word];
+	}
+}